@@ -20,8 +20,12 @@ import org.eclim.Services;
 
 import org.eclim.plugin.AbstractPluginResources;
 
+import org.eclim.plugin.cdt.command.complete.CFileWarmer;
+
 import org.eclim.plugin.cdt.project.CProjectManager;
 
+import org.eclim.plugin.core.command.complete.FileWarmup;
+
 import org.eclim.plugin.core.project.ProjectManagement;
 import org.eclim.plugin.core.project.ProjectNatureFactory;
 
@@ -45,6 +49,10 @@ public class PluginResources
   public static final String NATURE_C = CProjectNature.C_NATURE_ID;
   public static final String NATURE_CPP = CCProjectNature.CC_NATURE_ID;
 
+  private static final String[] C_EXTENSIONS = {
+    "c", "h", "cc", "cpp", "cxx", "hh", "hpp", "hxx",
+  };
+
   @Override
   public void initialize(String name)
   {
@@ -64,6 +72,11 @@ public class PluginResources
         CProjectNature.C_NATURE_ID, new CProjectManager());
     ProjectManagement.addProjectManager(
         CCProjectNature.CC_NATURE_ID, new CProjectManager());
+
+    CFileWarmer warmer = new CFileWarmer();
+    for (String extension : C_EXTENSIONS){
+      FileWarmup.addWarmer(extension, warmer);
+    }
   }
 
   @Override
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.cdt.command.complete;
+
+import org.eclim.plugin.core.command.complete.FileWarmer;
+
+import org.eclipse.cdt.core.CCorePlugin;
+
+import org.eclipse.cdt.core.index.IIndex;
+
+import org.eclipse.cdt.core.model.CoreModel;
+import org.eclipse.cdt.core.model.ICElement;
+import org.eclipse.cdt.core.model.ITranslationUnit;
+
+import org.eclipse.core.resources.IFile;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * FileWarmer for c/c++ source files which opens the translation unit and
+ * builds its ast against the project's index, so that the first c_complete in
+ * the file finds the index and model caches already populated.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class CFileWarmer
+  implements FileWarmer
+{
+  private static final int AST_STYLE =
+    ITranslationUnit.AST_CONFIGURE_USING_SOURCE_CONTEXT |
+    ITranslationUnit.AST_SKIP_INDEXED_HEADERS;
+
+  /**
+   * {@inheritDoc}
+   * @see FileWarmer#warmup(IFile,IProgressMonitor)
+   */
+  public void warmup(IFile file, IProgressMonitor monitor)
+    throws Exception
+  {
+    ICElement element = CoreModel.getDefault().create(file);
+    if (!(element instanceof ITranslationUnit) || !element.exists()){
+      return;
+    }
+
+    ITranslationUnit src = (ITranslationUnit)element;
+    src.open(monitor);
+    if (monitor.isCanceled()){
+      return;
+    }
+
+    IIndex index = CCorePlugin.getIndexManager().getIndex(src.getCProject());
+    index.acquireReadLock();
+    try{
+      src.getAST(index, AST_STYLE);
+    }finally{
+      index.releaseReadLock();
+    }
+  }
+}
@@ -70,7 +70,10 @@ import org.eclipse.ui.part.FileEditorInput;
     "REQUIRED f file ARG," +
     "REQUIRED o offset ARG," +
     "REQUIRED e encoding ARG," +
-    "REQUIRED l layout ARG"
+    "REQUIRED l layout ARG," +
+    "OPTIONAL x prefix ARG," +
+    "OPTIONAL m limit ARG," +
+    "OPTIONAL d deferinfo NOARG"
 )
 public class CodeCompleteCommand
   extends AbstractCodeCompleteCommand
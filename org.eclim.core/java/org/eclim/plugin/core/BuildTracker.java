@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclim.logging.Logger;
+
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.ResourcesPlugin;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+import org.eclipse.core.runtime.jobs.IJobManager;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Tracks workspace builds from PRE_BUILD/POST_BUILD events, allowing commands
+ * to wait for a running or pending build to complete without polling.
+ * <p/>
+ * Each build cycle is assigned a latch which is released when the cycle
+ * completes, and a generation counter is incremented for every completed
+ * build.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class BuildTracker
+  implements IResourceChangeListener
+{
+  private static final Logger logger = Logger.getLogger(BuildTracker.class);
+
+  private static final Object[] FAMILIES = {
+    ResourcesPlugin.FAMILY_AUTO_BUILD,
+    ResourcesPlugin.FAMILY_MANUAL_BUILD,
+  };
+
+  private static BuildTracker instance = new BuildTracker();
+
+  private volatile boolean building;
+  private volatile CountDownLatch latch = new CountDownLatch(0);
+  private AtomicLong generation = new AtomicLong();
+
+  private BuildTracker()
+  {
+  }
+
+  /**
+   * Gets the shared tracker instance.
+   *
+   * @return The BuildTracker.
+   */
+  public static BuildTracker getInstance()
+  {
+    return instance;
+  }
+
+  /**
+   * {@inheritDoc}
+   * @see IResourceChangeListener#resourceChanged(IResourceChangeEvent)
+   */
+  @Override
+  public void resourceChanged(IResourceChangeEvent event)
+  {
+    int type = event.getType();
+    if (type == IResourceChangeEvent.PRE_BUILD){
+      logger.debug("Received PRE_BUILD event.");
+      synchronized(this){
+        if (!building){
+          latch = new CountDownLatch(1);
+          building = true;
+        }
+      }
+    }else if (type == IResourceChangeEvent.POST_BUILD){
+      logger.debug("Received POST_BUILD event.");
+      synchronized(this){
+        generation.incrementAndGet();
+        building = false;
+        latch.countDown();
+      }
+    }
+  }
+
+  /**
+   * Determines if a build is currently running.
+   *
+   * @return true if a build is running, false otherwise.
+   */
+  public boolean isBuildRunning()
+  {
+    return building;
+  }
+
+  /**
+   * Gets the number of builds completed since eclimd started.
+   *
+   * @return The build generation.
+   */
+  public long getGeneration()
+  {
+    return generation.get();
+  }
+
+  /**
+   * Waits for any running build, along with any scheduled auto or manual
+   * build jobs, to complete. Returns immediately if no build is running or
+   * pending.
+   *
+   * @param timeout The max number of milliseconds to wait.
+   * @return true if no build is running or pending on return, false if the
+   * timeout elapsed first.
+   */
+  public boolean waitForBuild(long timeout)
+  {
+    long deadline = System.currentTimeMillis() + timeout;
+    try{
+      if (building &&
+          !latch.await(timeout, TimeUnit.MILLISECONDS))
+      {
+        return false;
+      }
+
+      IJobManager manager = Job.getJobManager();
+      for (Object family : FAMILIES){
+        Job[] jobs = manager.find(family);
+        if (jobs == null || jobs.length == 0){
+          continue;
+        }
+
+        // force any sleeping (delayed) build jobs to run now.
+        for (Job job : jobs){
+          job.wakeUp();
+        }
+        manager.join(family, new DeadlineMonitor(deadline));
+      }
+    }catch(InterruptedException ie){
+      Thread.currentThread().interrupt();
+      return false;
+    }catch(OperationCanceledException oce){
+      return false;
+    }
+    return !building;
+  }
+
+  /**
+   * Progress monitor which reports itself as canceled once the supplied
+   * deadline has passed, used to bound calls to IJobManager.join.
+   */
+  private static class DeadlineMonitor
+    extends NullProgressMonitor
+  {
+    private long deadline;
+
+    public DeadlineMonitor(long deadline)
+    {
+      this.deadline = deadline;
+    }
+
+    @Override
+    public boolean isCanceled()
+    {
+      return super.isCanceled() || System.currentTimeMillis() >= deadline;
+    }
+  }
+}
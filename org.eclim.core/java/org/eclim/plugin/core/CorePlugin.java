@@ -28,8 +28,20 @@ import org.eclim.logging.Logger;
 
 import org.eclim.plugin.Plugin;
 
+import org.eclim.plugin.core.command.history.LocalHistory;
+
+import org.eclim.plugin.core.command.problems.ProblemIndex;
+
+import org.eclim.plugin.core.command.refactoring.RefactorSessions;
+
+import org.eclim.plugin.core.command.search.FileIndex;
+
+import org.eclim.plugin.core.project.ProjectCatalog;
+import org.eclim.plugin.core.project.ProjectNatureFactory;
+
+import org.eclim.plugin.core.util.ParallelUtils;
+
 import org.eclipse.core.resources.IResourceChangeEvent;
-import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.ResourcesPlugin;
 
 import org.eclipse.core.runtime.Platform;
@@ -46,12 +58,10 @@ import org.osgi.framework.FrameworkEvent;
  */
 public class CorePlugin
   extends Plugin
-  implements IResourceChangeListener
 {
   private static final Logger logger = Logger.getLogger(CorePlugin.class);
 
   private String[] plugins;
-  private boolean building;
 
   //The shared instance.
   private static CorePlugin plugin;
@@ -120,7 +130,23 @@ public class CorePlugin
     }
 
     ResourcesPlugin.getWorkspace().addResourceChangeListener(
-        this, IResourceChangeEvent.PRE_BUILD | IResourceChangeEvent.POST_BUILD);
+        BuildTracker.getInstance(),
+        IResourceChangeEvent.PRE_BUILD | IResourceChangeEvent.POST_BUILD);
+    ResourcesPlugin.getWorkspace().addResourceChangeListener(
+        ProjectNatureFactory.getChangeListener(),
+        IResourceChangeEvent.POST_CHANGE |
+        IResourceChangeEvent.PRE_CLOSE |
+        IResourceChangeEvent.PRE_DELETE);
+    ResourcesPlugin.getWorkspace().addResourceChangeListener(
+        ProjectCatalog.getInstance(), IResourceChangeEvent.POST_CHANGE);
+    ResourcesPlugin.getWorkspace().addResourceChangeListener(
+        ProblemIndex.getInstance(), IResourceChangeEvent.POST_CHANGE);
+    ResourcesPlugin.getWorkspace().addResourceChangeListener(
+        FileIndex.getInstance(), IResourceChangeEvent.POST_CHANGE);
+    ResourcesPlugin.getWorkspace().addResourceChangeListener(
+        LocalHistory.getInstance(), IResourceChangeEvent.POST_CHANGE);
+    ResourcesPlugin.getWorkspace().addResourceChangeListener(
+        RefactorSessions.getInstance(), IResourceChangeEvent.POST_CHANGE);
 
     logger.info("Plugins loaded.");
     EclimDaemon.getInstance().frameworkEvent(
@@ -145,27 +171,31 @@ public class CorePlugin
       }
     }
 
-    ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+    ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+        BuildTracker.getInstance());
+    ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+        ProjectNatureFactory.getChangeListener());
+    ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+        ProjectCatalog.getInstance());
+    ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+        ProblemIndex.getInstance());
+    ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+        FileIndex.getInstance());
+    ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+        LocalHistory.getInstance());
+    ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+        RefactorSessions.getInstance());
+    ParallelUtils.shutdown();
   }
 
   /**
-   * {@inheritDoc}
-   * @see IResourceChangeListener#resourceChanged(IResourceChangeEvent)
+   * Determines if a workspace build is currently running.
+   *
+   * @return true if a build is running, false otherwise.
+   * @see BuildTracker#isBuildRunning()
    */
-  public void resourceChanged(IResourceChangeEvent event)
-  {
-    int type = event.getType();
-    if (type == IResourceChangeEvent.PRE_BUILD){
-      logger.debug("Received PRE_BUILD event.");
-      building = true;
-    }else if (type == IResourceChangeEvent.POST_BUILD){
-      logger.debug("Received POST_BUILD event.");
-      building = false;
-    }
-  }
-
   public boolean isBuildRunning()
   {
-    return building;
+    return BuildTracker.getInstance().isBuildRunning();
   }
 }
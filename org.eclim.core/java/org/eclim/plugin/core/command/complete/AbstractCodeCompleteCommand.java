@@ -17,6 +17,7 @@
 package org.eclim.plugin.core.command.complete;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -47,6 +48,8 @@ public abstract class AbstractCodeCompleteCommand
   private static String COMPACT = "compact";
   //private static String STANDARD = "standard";
 
+  private boolean deferInfo;
+
   @Override
   public Object execute(final CommandLine commandLine)
     throws Exception
@@ -55,26 +58,62 @@ public abstract class AbstractCodeCompleteCommand
     String file = commandLine.getValue(Options.FILE_OPTION);
     int offset = getOffset(commandLine);
 
+    deferInfo = commandLine.hasOption(Options.DEFER_INFO_OPTION);
+
     ICompletionProposal[] proposals =
       getCompletionProposals(commandLine, project, file, offset);
 
-    ArrayList<CodeCompleteResult> results = new ArrayList<CodeCompleteResult>();
+    CodeCompleteMatcher matcher = new CodeCompleteMatcher(
+        commandLine.getValue(Options.PREFIX_OPTION));
+    LinkedHashSet<CodeCompleteResult> unique =
+      new LinkedHashSet<CodeCompleteResult>();
 
     if(proposals != null){
-      for (ICompletionProposal proposal : proposals){
+      long key = CodeCompleteProposals.register(
+          new CodeCompleteProposals.InfoResolver(){
+            public String getInfo(Object proposal){
+              return AbstractCodeCompleteCommand.this
+                .getInfo((ICompletionProposal)proposal);
+            }
+          }, proposals);
+
+      for (int ii = 0; ii < proposals.length; ii++){
+        ICompletionProposal proposal = proposals[ii];
         if(acceptProposal(proposal)){
           CodeCompleteResult ccresult = createCodeCompletionResult(proposal);
-          if(!results.contains(ccresult)){
-            results.add(ccresult);
+          if(matcher.matches(ccresult.getCompletion())){
+            ccresult.setId(CodeCompleteProposals.getId(key, ii));
+            unique.add(ccresult);
           }
         }
       }
     }
 
+    ArrayList<CodeCompleteResult> results =
+      new ArrayList<CodeCompleteResult>(unique);
+
     String layout = commandLine.getValue(Options.LAYOUT_OPTION);
     if(COMPACT.equals(layout) && results.size() > 0){
       results = compact(results);
     }
+    return limit(results, commandLine.getIntValue(Options.MAX_RESULTS_OPTION));
+  }
+
+  /**
+   * Truncates the supplied results, which are expected to already be in order
+   * of relevance, to the supplied limit.
+   *
+   * @param results The completion results.
+   * @param limit The max number of results to keep (values less than 1 mean
+   * no limit).
+   * @return The truncated results.
+   */
+  protected ArrayList<CodeCompleteResult> limit(
+      ArrayList<CodeCompleteResult> results, int limit)
+  {
+    if (limit > 0 && results.size() > limit){
+      return new ArrayList<CodeCompleteResult>(results.subList(0, limit));
+    }
     return results;
   }
 
@@ -88,7 +127,21 @@ public abstract class AbstractCodeCompleteCommand
       ICompletionProposal proposal)
   {
     return new CodeCompleteResult(
-        getCompletion(proposal), getMenu(proposal), getInfo(proposal));
+        getCompletion(proposal),
+        getMenu(proposal),
+        isInfoDeferred() ? StringUtils.EMPTY : getInfo(proposal));
+  }
+
+  /**
+   * Determines if the client requested that the info of each result be left
+   * empty, to be resolved later for individual results via the
+   * completion_info command.
+   *
+   * @return true if the info is deferred, false otherwise.
+   */
+  protected boolean isInfoDeferred()
+  {
+    return deferInfo;
   }
 
   /**
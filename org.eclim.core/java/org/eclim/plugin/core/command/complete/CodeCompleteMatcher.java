@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.complete;
+
+/**
+ * Matches completions against the prefix the user has typed so far, either as
+ * a case insensitive prefix or as a camel case abbreviation (NPE matching
+ * NullPointerException).
+ *
+ * @author Eric Van Dewoestine
+ */
+public class CodeCompleteMatcher
+{
+  private String prefix;
+  private String[] humps;
+
+  /**
+   * Constructs a new instance.
+   *
+   * @param prefix The prefix to match (null or empty matches everything).
+   */
+  public CodeCompleteMatcher(String prefix)
+  {
+    this.prefix = prefix != null ? prefix : "";
+    this.humps = humps(this.prefix, this.prefix.length());
+  }
+
+  /**
+   * Gets the prefix this matcher matches against.
+   *
+   * @return The prefix.
+   */
+  public String getPrefix()
+  {
+    return prefix;
+  }
+
+  /**
+   * Determines if the supplied completion matches this matcher's prefix.
+   *
+   * @param completion The completion text.
+   * @return true if the completion matches, false otherwise.
+   */
+  public boolean matches(String completion)
+  {
+    if (prefix.length() == 0){
+      return true;
+    }
+    if (completion == null){
+      return false;
+    }
+
+    // only match against the last segment of qualified completions
+    // (java.util.List) and ignore any argument portion (method(String)).
+    int end = completion.indexOf('(');
+    if (end == -1){
+      end = completion.length();
+    }
+    int start = completion.lastIndexOf('.', end - 1) + 1;
+    if (start >= end){
+      start = 0;
+    }
+
+    if (completion.regionMatches(true, start, prefix, 0, prefix.length())){
+      return true;
+    }
+
+    // camel case matching requires at least two humps in the prefix.
+    if (humps.length < 2 || end - start < humps.length ||
+        completion.charAt(start) != prefix.charAt(0))
+    {
+      return false;
+    }
+
+    String[] names = humps(completion.substring(start, end), end - start);
+    if (names.length < humps.length){
+      return false;
+    }
+    for (int ii = 0; ii < humps.length; ii++){
+      if (!names[ii].startsWith(humps[ii])){
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Splits the supplied name into camel case humps (NullPointer -> Null,
+   * Pointer).
+   */
+  private static String[] humps(String name, int length)
+  {
+    int count = 0;
+    for (int ii = 0; ii < length; ii++){
+      if (ii == 0 || Character.isUpperCase(name.charAt(ii))){
+        count++;
+      }
+    }
+
+    String[] humps = new String[count];
+    int start = 0;
+    int index = 0;
+    for (int ii = 1; ii <= length; ii++){
+      if (ii == length || Character.isUpperCase(name.charAt(ii))){
+        humps[index++] = name.substring(start, ii);
+        start = ii;
+      }
+    }
+    return humps;
+  }
+}
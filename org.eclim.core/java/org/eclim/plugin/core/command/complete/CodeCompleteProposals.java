@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.complete;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the proposals behind the most recent code completion results so that
+ * the details of a single result (javadoc, etc.) can be resolved on demand,
+ * via the completion_info command, instead of being computed up front for
+ * every proposal.
+ * <p/>
+ * Result ids take the form &lt;set&gt;.&lt;index&gt; where set identifies the
+ * completion request the proposal was collected by and index is the index of
+ * the proposal within that request.
+ * <p/>
+ * Only the sets of the last few requests are kept, except for sets retained
+ * by a completion command which continues to serve their ids (an incremental
+ * completion session for instance), which are kept until released.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class CodeCompleteProposals
+{
+  private static final int MAX_SETS = 4;
+
+  private static long sequence;
+
+  private static final Map<Long, ProposalSet> SETS =
+    new LinkedHashMap<Long, ProposalSet>();
+
+  private CodeCompleteProposals()
+  {
+  }
+
+  /**
+   * Registers a set of proposals whose info can later be resolved by id.
+   *
+   * @param resolver The InfoResolver used to resolve a proposal's info.
+   * @param proposals The proposals.
+   * @return The key to pass to {@link #getId(long,int)}.
+   */
+  public static synchronized long register(
+      InfoResolver resolver, Object[] proposals)
+  {
+    long key = ++sequence;
+    SETS.put(key, new ProposalSet(resolver, proposals));
+    evict();
+    return key;
+  }
+
+  /**
+   * Retains a registered set, exempting it from eviction, for as long as the
+   * ids of its proposals are being handed out to clients.
+   *
+   * @param key The key returned by {@link #register(InfoResolver,Object[])}.
+   */
+  public static synchronized void retain(long key)
+  {
+    ProposalSet set = SETS.get(key);
+    if (set != null){
+      set.retained = true;
+    }
+  }
+
+  /**
+   * Releases a set previously retained, making it subject to eviction again.
+   *
+   * @param key The key returned by {@link #register(InfoResolver,Object[])}.
+   */
+  public static synchronized void release(long key)
+  {
+    ProposalSet set = SETS.get(key);
+    if (set != null){
+      set.retained = false;
+      evict();
+    }
+  }
+
+  /**
+   * Gets the id of a proposal in a registered set.
+   *
+   * @param key The key returned by {@link #register(InfoResolver,Object[])}.
+   * @param index The index of the proposal in the registered array.
+   * @return The id.
+   */
+  public static String getId(long key, int index)
+  {
+    return key + "." + index;
+  }
+
+  /**
+   * Resolves the info for the proposal with the supplied id.
+   *
+   * @param id The proposal id.
+   * @return The info or null if the proposal is no longer available.
+   */
+  public static String getInfo(String id)
+    throws Exception
+  {
+    int dot = id != null ? id.indexOf('.') : -1;
+    if (dot == -1){
+      return null;
+    }
+
+    ProposalSet set;
+    int index;
+    try{
+      long key = Long.parseLong(id.substring(0, dot));
+      index = Integer.parseInt(id.substring(dot + 1));
+      synchronized(CodeCompleteProposals.class){
+        set = SETS.get(key);
+      }
+    }catch(NumberFormatException nfe){
+      return null;
+    }
+
+    if (set == null || index < 0 || index >= set.proposals.length){
+      return null;
+    }
+    return set.resolver.getInfo(set.proposals[index]);
+  }
+
+  /**
+   * Evicts the oldest sets which aren't retained beyond MAX_SETS.
+   */
+  private static void evict()
+  {
+    int evictable = 0;
+    for (ProposalSet set : SETS.values()){
+      if (!set.retained){
+        evictable++;
+      }
+    }
+
+    Iterator<ProposalSet> iterator = SETS.values().iterator();
+    while (evictable > MAX_SETS && iterator.hasNext()){
+      if (!iterator.next().retained){
+        iterator.remove();
+        evictable--;
+      }
+    }
+  }
+
+  /**
+   * Resolves the info of proposals registered by a completion command.
+   */
+  public interface InfoResolver
+  {
+    /**
+     * Gets the info for the supplied proposal.
+     *
+     * @param proposal A proposal registered with this resolver.
+     * @return The info.
+     */
+    public String getInfo(Object proposal)
+      throws Exception;
+  }
+
+  private static class ProposalSet
+  {
+    public InfoResolver resolver;
+    public Object[] proposals;
+    public boolean retained;
+
+    public ProposalSet(InfoResolver resolver, Object[] proposals)
+    {
+      this.resolver = resolver;
+      this.proposals = proposals;
+    }
+  }
+}
@@ -44,6 +44,7 @@ public class CodeCompleteResult
   private String menu;
   private String info;
   private String type;
+  private String id;
 
   /**
    * Constructs a new instance.
@@ -127,6 +128,27 @@ public class CodeCompleteResult
     return this.type;
   }
 
+  /**
+   * Gets the id which can be used to resolve the full info of this completion
+   * via the completion_info command.
+   *
+   * @return The id or null if none.
+   */
+  public String getId()
+  {
+    return id;
+  }
+
+  /**
+   * Sets the id which can be used to resolve the full info of this completion.
+   *
+   * @param id The id.
+   */
+  public void setId(String id)
+  {
+    this.id = id;
+  }
+
   /**
    * Creates the menu text based on the supplied text info.
    *
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.complete;
+
+import org.eclim.Services;
+
+import org.eclim.annotation.Command;
+
+import org.eclim.command.CommandLine;
+import org.eclim.command.Options;
+
+import org.eclim.plugin.core.command.AbstractCommand;
+
+/**
+ * Command to resolve the full info (javadoc, etc.) of a single code completion
+ * result from the id included with that result.
+ *
+ * @author Eric Van Dewoestine
+ */
+@Command(
+  name = "completion_info",
+  options = "REQUIRED i id ARG"
+)
+public class CompletionInfoCommand
+  extends AbstractCommand
+{
+  /**
+   * {@inheritDoc}
+   * @see org.eclim.command.Command#execute(CommandLine)
+   */
+  public Object execute(CommandLine commandLine)
+    throws Exception
+  {
+    String id = commandLine.getValue(Options.ID_OPTION);
+    String info = CodeCompleteProposals.getInfo(id);
+    if (info == null){
+      return Services.getMessage("completion.info.not.found", id);
+    }
+    return info;
+  }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.complete;
+
+import org.eclipse.core.resources.IFile;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Defines a means to prime the caches (model, ast, index, etc.) used when
+ * completing in a file of a particular type.
+ *
+ * @author Eric Van Dewoestine
+ */
+public interface FileWarmer
+{
+  /**
+   * Primes the caches for the supplied file. Invoked from a low priority
+   * background job.
+   *
+   * @param file The file.
+   * @param monitor The progress monitor of the job.
+   */
+  public void warmup(IFile file, IProgressMonitor monitor)
+    throws Exception;
+}
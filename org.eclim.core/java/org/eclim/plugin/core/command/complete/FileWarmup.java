@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.complete;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclim.logging.Logger;
+
+import org.eclipse.core.resources.IFile;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Schedules the registered {@link FileWarmer} for a file in a low priority
+ * background job, so that the first completion request in that file finds the
+ * model, ast, and index caches already populated.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class FileWarmup
+{
+  private static final Logger logger = Logger.getLogger(FileWarmup.class);
+
+  private static final int MAX_WARMED = 100;
+
+  private static HashMap<String, FileWarmer> warmers =
+    new HashMap<String, FileWarmer>();
+
+  // modification stamp of the recently warmed files, so that switching back
+  // and forth between buffers doesn't repeatedly warm the same file.
+  @SuppressWarnings("serial")
+  private static final Map<IPath, Long> WARMED =
+    new LinkedHashMap<IPath, Long>(16, .75f, true){
+      protected boolean removeEldestEntry(Map.Entry<IPath, Long> eldest){
+        return size() > MAX_WARMED;
+      }
+    };
+
+  private FileWarmup()
+  {
+  }
+
+  /**
+   * Registers a FileWarmer.
+   *
+   * @param extension The file extension the warmer handles.
+   * @param warmer The FileWarmer.
+   */
+  public static synchronized void addWarmer(String extension, FileWarmer warmer)
+  {
+    logger.debug("add file warmer: extension: {} warmer: {}", extension, warmer);
+    warmers.put(extension.toLowerCase(), warmer);
+  }
+
+  /**
+   * Schedules the warm up of the supplied file.
+   *
+   * @param file The file.
+   * @return true if a warm up was scheduled, false if the file has no
+   * registered warmer or has already been warmed.
+   */
+  public static boolean schedule(final IFile file)
+  {
+    String extension = file.getFileExtension();
+    if (extension == null || !file.exists()){
+      return false;
+    }
+
+    final FileWarmer warmer;
+    final IPath path = file.getFullPath();
+    synchronized(FileWarmup.class){
+      warmer = warmers.get(extension.toLowerCase());
+      if (warmer == null){
+        return false;
+      }
+
+      Long stamp = Long.valueOf(file.getModificationStamp());
+      if (stamp.equals(WARMED.get(path))){
+        return false;
+      }
+      WARMED.put(path, stamp);
+    }
+
+    Job job = new Job("eclim warmup: " + file.getName()){
+      protected IStatus run(IProgressMonitor monitor)
+      {
+        try{
+          if (file.exists()){
+            warmer.warmup(file, monitor);
+          }
+        }catch(Exception e){
+          logger.debug("Failed to warm up file: " + path, e);
+          synchronized(FileWarmup.class){
+            WARMED.remove(path);
+          }
+        }
+        return Status.OK_STATUS;
+      }
+    };
+    job.setSystem(true);
+    job.setPriority(Job.DECORATE);
+    job.schedule();
+    return true;
+  }
+}
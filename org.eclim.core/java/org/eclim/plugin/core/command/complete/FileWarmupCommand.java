@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.complete;
+
+import org.eclim.annotation.Command;
+
+import org.eclim.command.CommandLine;
+import org.eclim.command.Options;
+
+import org.eclim.plugin.core.command.AbstractCommand;
+
+import org.eclim.plugin.core.util.ProjectUtils;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.ResourcesPlugin;
+
+import org.eclipse.core.runtime.Path;
+
+/**
+ * Command which asynchronously primes the caches used to complete in the
+ * supplied file, typically issued when the file is opened.
+ *
+ * @author Eric Van Dewoestine
+ */
+@Command(
+  name = "file_warmup",
+  options =
+    "REQUIRED f file ARG," +
+    "OPTIONAL p project ARG"
+)
+public class FileWarmupCommand
+  extends AbstractCommand
+{
+  /**
+   * {@inheritDoc}
+   * @see org.eclim.command.Command#execute(CommandLine)
+   */
+  public Object execute(CommandLine commandLine)
+    throws Exception
+  {
+    String file = commandLine.getValue(Options.FILE_OPTION);
+    String project = commandLine.getValue(Options.PROJECT_OPTION);
+
+    // without a project, the file is expected to be an absolute path.
+    IFile ifile = project != null ?
+      ProjectUtils.getFile(project, file) :
+      ResourcesPlugin.getWorkspace().getRoot()
+        .getFileForLocation(new Path(file));
+
+    if (ifile != null){
+      FileWarmup.schedule(ifile);
+    }
+    return null;
+  }
+}
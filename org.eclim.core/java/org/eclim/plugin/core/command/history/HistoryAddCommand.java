@@ -65,6 +65,7 @@ public class HistoryAddCommand
       IFileInfo fileInfo = store.fetchInfo();
       localManager.getHistoryStore()
         .addState(file.getFullPath(), store, fileInfo, false);
+      LocalHistory.getInstance().invalidate(file);
     }
     return null;
   }
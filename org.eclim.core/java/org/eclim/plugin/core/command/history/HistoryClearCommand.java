@@ -58,6 +58,7 @@ public class HistoryClearCommand
     File file = (File)ProjectUtils.getFile(project, filename);
     file.getLocalManager().getHistoryStore()
       .remove(file.getFullPath(), new NullProgressMonitor());
+    LocalHistory.getInstance().invalidate(file);
     return Services.getMessage("history.cleared");
   }
 }
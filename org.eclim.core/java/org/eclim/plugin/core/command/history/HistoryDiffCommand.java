@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.history;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.eclim.Services;
+
+import org.eclim.annotation.Command;
+
+import org.eclim.command.CommandLine;
+import org.eclim.command.Options;
+
+import org.eclim.plugin.core.command.AbstractCommand;
+
+import org.eclim.plugin.core.util.ProjectUtils;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFileState;
+
+/**
+ * Command which computes the unified diff hunks between a local history
+ * revision and either another revision, the contents of the user's buffer
+ * (written by the client to a temp file), or the current file contents.
+ *
+ * @author Eric Van Dewoestine
+ */
+@Command(
+  name = "history_diff",
+  options =
+    "REQUIRED p project ARG," +
+    "REQUIRED f file ARG," +
+    "REQUIRED r revision ARG," +
+    "OPTIONAL c compare ARG," +
+    "OPTIONAL b buffer ARG," +
+    "OPTIONAL x context ARG"
+)
+public class HistoryDiffCommand
+  extends AbstractCommand
+{
+  /**
+   * {@inheritDoc}
+   * @see org.eclim.command.Command#execute(CommandLine)
+   */
+  public Object execute(CommandLine commandLine)
+    throws Exception
+  {
+    String project = commandLine.getValue(Options.PROJECT_OPTION);
+    String filename = commandLine.getValue(Options.FILE_OPTION);
+    long revision = commandLine.getLongValue(Options.REVISION_OPTION);
+    int context = commandLine.hasOption(Options.CONTEXT_OPTION) ?
+      commandLine.getIntValue(Options.CONTEXT_OPTION) : UnifiedDiff.CONTEXT;
+
+    LocalHistory history = LocalHistory.getInstance();
+    IFile file = ProjectUtils.getFile(project, filename);
+    IFileState original = history.getState(file, revision);
+    if (original == null){
+      return Services.getMessage(
+          "history.revision.not.found", String.valueOf(revision));
+    }
+
+    String revised;
+    if (commandLine.hasOption(Options.COMPARE_OPTION)){
+      long compare = commandLine.getLongValue(Options.COMPARE_OPTION);
+      IFileState state = history.getState(file, compare);
+      if (state == null){
+        return Services.getMessage(
+            "history.revision.not.found", String.valueOf(compare));
+      }
+      revised = history.getContents(state);
+    }else if (commandLine.hasOption(Options.BUFFER_OPTION)){
+      revised = history.getContents(
+          file, new File(commandLine.getValue(Options.BUFFER_OPTION)));
+    }else{
+      revised = history.getContents(file);
+    }
+
+    List<UnifiedDiff.Hunk> hunks = UnifiedDiff.diff(
+        UnifiedDiff.lines(history.getContents(original)),
+        UnifiedDiff.lines(revised),
+        Math.max(context, 0));
+
+    ArrayList<HashMap<String,Object>> results =
+      new ArrayList<HashMap<String,Object>>();
+    for (UnifiedDiff.Hunk hunk : hunks){
+      HashMap<String,Object> result = new HashMap<String,Object>();
+      result.put("header", hunk.getHeader());
+      result.put("lines", hunk.getLines());
+      results.add(result);
+    }
+    return results;
+  }
+}
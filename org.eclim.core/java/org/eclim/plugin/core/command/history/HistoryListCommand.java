@@ -19,8 +19,6 @@ package org.eclim.plugin.core.command.history;
 import java.text.SimpleDateFormat;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 
@@ -35,13 +33,8 @@ import org.eclim.plugin.core.util.ProjectUtils;
 
 import org.eclim.util.StringUtils;
 
-import org.eclipse.core.internal.resources.File;
-
-import org.eclipse.core.runtime.NullProgressMonitor;
-
-import org.eclipse.team.core.history.IFileRevision;
-
-import org.eclipse.team.internal.core.history.LocalFileHistory;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFileState;
 
 import org.joda.time.Period;
 
@@ -72,25 +65,17 @@ public class HistoryListCommand
     String project = commandLine.getValue(Options.PROJECT_OPTION);
     String filename = commandLine.getValue(Options.FILE_OPTION);
 
-    File file = (File)ProjectUtils.getFile(project, filename);
-    LocalFileHistory history =
-      new LocalFileHistory(file, false /* include current */);
-    history.refresh(new NullProgressMonitor());
-    IFileRevision[] revisions = history.getFileRevisions();
-    Arrays.sort(revisions, new Comparator<IFileRevision>(){
-      public int compare(IFileRevision r1, IFileRevision r2){
-        return (int)(r2.getTimestamp() - r1.getTimestamp());
-      }
-    });
+    IFile file = ProjectUtils.getFile(project, filename);
+    IFileState[] states = LocalHistory.getInstance().getStates(file);
 
     ArrayList<HashMap<String,Object>> results =
       new ArrayList<HashMap<String,Object>>();
-    for (IFileRevision revision : revisions){
+    for (IFileState state : states){
+      long timestamp = state.getModificationTime();
       HashMap<String,Object> result = new HashMap<String,Object>();
-      result.put("timestamp", String.valueOf(revision.getTimestamp()));
-      result.put("datetime",
-          DATE_FORMATTER.format(new Date(revision.getTimestamp())));
-      result.put("delta", delta(revision.getTimestamp()));
+      result.put("timestamp", String.valueOf(timestamp));
+      result.put("datetime", DATE_FORMATTER.format(new Date(timestamp)));
+      result.put("delta", delta(timestamp));
       results.add(result);
     }
 
@@ -25,15 +25,8 @@ import org.eclim.plugin.core.command.AbstractCommand;
 
 import org.eclim.plugin.core.util.ProjectUtils;
 
-import org.eclim.util.IOUtils;
-
-import org.eclipse.core.internal.resources.File;
-
-import org.eclipse.core.runtime.NullProgressMonitor;
-
-import org.eclipse.team.core.history.IFileRevision;
-
-import org.eclipse.team.internal.core.history.LocalFileHistory;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFileState;
 
 /**
  * Command which outputs the contents of a specific revision.
@@ -61,16 +54,8 @@ public class HistoryRevisionCommand
     String filename = commandLine.getValue(Options.FILE_OPTION);
     long revision = commandLine.getLongValue(Options.REVISION_OPTION);
 
-    File file = (File)ProjectUtils.getFile(project, filename);
-    LocalFileHistory history = new LocalFileHistory(file, false);
-    history.refresh(new NullProgressMonitor());
-    IFileRevision[] revisions = history.getFileRevisions();
-    for(IFileRevision rev : revisions){
-      if (rev.getTimestamp() == revision){
-        return IOUtils.toString(
-            rev.getStorage(new NullProgressMonitor()).getContents());
-      }
-    }
-    return null;
+    IFile file = ProjectUtils.getFile(project, filename);
+    IFileState state = LocalHistory.getInstance().getState(file, revision);
+    return state != null ? LocalHistory.getInstance().getContents(state) : null;
   }
 }
@@ -0,0 +1,259 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.history;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclim.logging.Logger;
+
+import org.eclim.util.IOUtils;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFileState;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+/**
+ * Cache of the local history timeline of each file requested by the history
+ * commands.
+ * <p/>
+ * A file's timeline is read from the workspace history store once and kept
+ * until a new history state may have been recorded for the file: a content
+ * change or removal reported by a POST_CHANGE event, or an explicit
+ * {@link #invalidate(IFile)} by the commands which modify the history store
+ * directly.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class LocalHistory
+  implements IResourceChangeListener
+{
+  private static final Logger logger = Logger.getLogger(LocalHistory.class);
+
+  private static final int INVALIDATING_FLAGS =
+    IResourceDelta.CONTENT |
+    IResourceDelta.REPLACED |
+    IResourceDelta.MOVED_FROM |
+    IResourceDelta.MOVED_TO;
+
+  private static final Comparator<IFileState> NEWEST_FIRST =
+    new Comparator<IFileState>(){
+      public int compare(IFileState s1, IFileState s2){
+        long t1 = s1.getModificationTime();
+        long t2 = s2.getModificationTime();
+        return t1 < t2 ? 1 : (t1 == t2 ? 0 : -1);
+      }
+    };
+
+  private static LocalHistory instance = new LocalHistory();
+
+  private ConcurrentHashMap<IPath,Timeline> timelines =
+    new ConcurrentHashMap<IPath,Timeline>();
+  private AtomicLong generation = new AtomicLong();
+
+  private LocalHistory()
+  {
+  }
+
+  /**
+   * Gets the shared history instance.
+   *
+   * @return The LocalHistory.
+   */
+  public static LocalHistory getInstance()
+  {
+    return instance;
+  }
+
+  /**
+   * Gets the history states of the supplied file, newest first.
+   *
+   * @param file The file.
+   * @return Array of history states (callers must not modify it).
+   */
+  public IFileState[] getStates(IFile file)
+    throws CoreException
+  {
+    return getTimeline(file).states;
+  }
+
+  /**
+   * Gets the history state of the supplied file with the given timestamp.
+   *
+   * @param file The file.
+   * @param timestamp The modification time of the state.
+   * @return The state or null if no such state exists.
+   */
+  public IFileState getState(IFile file, long timestamp)
+    throws CoreException
+  {
+    IFileState state = getTimeline(file).byTimestamp.get(timestamp);
+    if (state != null && !state.exists()){
+      // the history store was trimmed since the timeline was read.
+      invalidate(file);
+      state = getTimeline(file).byTimestamp.get(timestamp);
+    }
+    return state;
+  }
+
+  /**
+   * Reads the contents of the supplied history state.
+   *
+   * @param state The history state.
+   * @return The contents.
+   */
+  public String getContents(IFileState state)
+    throws Exception
+  {
+    return read(state.getContents(), state.getCharset());
+  }
+
+  /**
+   * Reads the current contents of the supplied file.
+   *
+   * @param file The file.
+   * @return The contents.
+   */
+  public String getContents(IFile file)
+    throws Exception
+  {
+    return read(file.getContents(true), file.getCharset());
+  }
+
+  /**
+   * Reads the contents of a client supplied copy of the file (the contents of
+   * the user's possibly unsaved buffer), using the file's charset.
+   *
+   * @param file The file.
+   * @param buffer The file holding the buffer contents.
+   * @return The contents.
+   */
+  public String getContents(IFile file, File buffer)
+    throws Exception
+  {
+    return read(new FileInputStream(buffer), file.getCharset());
+  }
+
+  /**
+   * Discards the cached timeline of the supplied file.
+   *
+   * @param file The file.
+   */
+  public void invalidate(IFile file)
+  {
+    generation.incrementAndGet();
+    timelines.remove(file.getFullPath());
+  }
+
+  /**
+   * {@inheritDoc}
+   * @see IResourceChangeListener#resourceChanged(IResourceChangeEvent)
+   */
+  @Override
+  public void resourceChanged(IResourceChangeEvent event)
+  {
+    IResourceDelta delta = event.getDelta();
+    if (delta == null || timelines.isEmpty()){
+      return;
+    }
+
+    try{
+      delta.accept(new IResourceDeltaVisitor(){
+        public boolean visit(IResourceDelta delta)
+        {
+          IResource resource = delta.getResource();
+          if (resource.getType() != IResource.FILE){
+            return true;
+          }
+          if (delta.getKind() != IResourceDelta.CHANGED ||
+              (delta.getFlags() & INVALIDATING_FLAGS) != 0)
+          {
+            generation.incrementAndGet();
+            timelines.remove(resource.getFullPath());
+          }
+          return false;
+        }
+      });
+    }catch(CoreException ce){
+      logger.error("Error updating local history cache.", ce);
+    }
+  }
+
+  private Timeline getTimeline(IFile file)
+    throws CoreException
+  {
+    IPath path = file.getFullPath();
+    Timeline timeline = timelines.get(path);
+    if (timeline == null){
+      long current = generation.get();
+      IFileState[] states = file.getHistory(new NullProgressMonitor());
+      Arrays.sort(states, NEWEST_FIRST);
+      timeline = new Timeline(states);
+
+      // don't cache a timeline which may have been invalidated while reading.
+      if (generation.get() == current){
+        timelines.put(path, timeline);
+      }
+    }
+    return timeline;
+  }
+
+  private String read(InputStream in, String charset)
+    throws Exception
+  {
+    try{
+      return IOUtils.toString(charset != null ?
+          new InputStreamReader(in, charset) : new InputStreamReader(in));
+    }finally{
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  private static class Timeline
+  {
+    public final IFileState[] states;
+    public final Map<Long,IFileState> byTimestamp;
+
+    public Timeline(IFileState[] states)
+    {
+      this.states = states;
+      this.byTimestamp = new HashMap<Long,IFileState>(states.length * 2);
+      for (IFileState state : states){
+        byTimestamp.put(state.getModificationTime(), state);
+      }
+    }
+  }
+}
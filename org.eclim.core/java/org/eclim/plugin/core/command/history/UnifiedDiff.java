@@ -0,0 +1,389 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.history;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Line based diff (Myers' O(ND) algorithm, linear space variant) rendered as
+ * unified diff hunks.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class UnifiedDiff
+{
+  /**
+   * Default number of context lines surrounding each change.
+   */
+  public static final int CONTEXT = 3;
+
+  /**
+   * Number of edits the middle snake search explores before settling for the
+   * furthest point reached, trading a minimal diff of heavily rewritten files
+   * for bounded time.
+   */
+  private static final int MAX_COST = 1024;
+
+  private static final char EQUAL = ' ';
+  private static final char DELETE = '-';
+  private static final char INSERT = '+';
+
+  private UnifiedDiff()
+  {
+  }
+
+  /**
+   * Splits the supplied text into lines, without their line terminators.
+   *
+   * @param text The text.
+   * @return Array of lines.
+   */
+  public static String[] lines(String text)
+  {
+    if (text.length() == 0){
+      return new String[0];
+    }
+    String[] lines = text.split("\r?\n", -1);
+    // a trailing terminator doesn't start another line.
+    if (lines[lines.length - 1].length() == 0){
+      lines = Arrays.copyOf(lines, lines.length - 1);
+    }
+    return lines;
+  }
+
+  /**
+   * Computes the hunks which transform the original lines into the revised
+   * ones.
+   *
+   * @param original The original lines.
+   * @param revised The revised lines.
+   * @param context The number of context lines surrounding each change.
+   * @return List of hunks, empty if the lines are equal.
+   */
+  public static List<Hunk> diff(String[] original, String[] revised, int context)
+  {
+    List<Edit> edits = edits(original, revised);
+
+    // line offset in each file preceding each edit.
+    int size = edits.size();
+    int[] originalLine = new int[size + 1];
+    int[] revisedLine = new int[size + 1];
+    for (int ii = 0; ii < size; ii++){
+      char type = edits.get(ii).type;
+      originalLine[ii + 1] = originalLine[ii] + (type != INSERT ? 1 : 0);
+      revisedLine[ii + 1] = revisedLine[ii] + (type != DELETE ? 1 : 0);
+    }
+
+    ArrayList<Hunk> hunks = new ArrayList<Hunk>();
+    int index = 0;
+    while (index < size){
+      while (index < size && edits.get(index).type == EQUAL){
+        index++;
+      }
+      if (index == size){
+        break;
+      }
+
+      int start = Math.max(0, index - context);
+      int end = index;
+      while (true){
+        while (end < size && edits.get(end).type != EQUAL){
+          end++;
+        }
+        int next = end;
+        while (next < size && edits.get(next).type == EQUAL){
+          next++;
+        }
+        // merge changes whose surrounding context would overlap.
+        if (next < size && next - end <= context * 2){
+          end = next;
+          continue;
+        }
+        end = Math.min(size, end + context);
+        break;
+      }
+
+      Hunk hunk = new Hunk();
+      hunk.originalCount = originalLine[end] - originalLine[start];
+      hunk.originalStart = originalLine[start] + (hunk.originalCount > 0 ? 1 : 0);
+      hunk.revisedCount = revisedLine[end] - revisedLine[start];
+      hunk.revisedStart = revisedLine[start] + (hunk.revisedCount > 0 ? 1 : 0);
+      for (int ii = start; ii < end; ii++){
+        Edit edit = edits.get(ii);
+        hunk.lines.add(edit.type + edit.line);
+      }
+      hunks.add(hunk);
+      index = end;
+    }
+    return hunks;
+  }
+
+  private static List<Edit> edits(String[] a, String[] b)
+  {
+    // only the region between the common prefix and suffix needs diffing.
+    int prefix = 0;
+    while (prefix < a.length && prefix < b.length &&
+        a[prefix].equals(b[prefix]))
+    {
+      prefix++;
+    }
+    int suffix = 0;
+    while (suffix < a.length - prefix && suffix < b.length - prefix &&
+        a[a.length - suffix - 1].equals(b[b.length - suffix - 1]))
+    {
+      suffix++;
+    }
+
+    ArrayList<Edit> edits = new ArrayList<Edit>(
+        Math.max(a.length, b.length) + 1);
+    for (int ii = 0; ii < prefix; ii++){
+      edits.add(new Edit(EQUAL, a[ii]));
+    }
+    myers(a, prefix, a.length - suffix, b, prefix, b.length - suffix, edits);
+    for (int ii = a.length - suffix; ii < a.length; ii++){
+      edits.add(new Edit(EQUAL, a[ii]));
+    }
+    return edits;
+  }
+
+  private static void myers(
+      String[] a, int aStart, int aEnd,
+      String[] b, int bStart, int bEnd,
+      List<Edit> edits)
+  {
+    // linear space variant: find the middle snake of an optimal path, then
+    // diff the regions before and after it, so memory stays O(N + M)
+    // regardless of the number of differences.
+    int prefix = 0;
+    while (aStart + prefix < aEnd && bStart + prefix < bEnd &&
+        a[aStart + prefix].equals(b[bStart + prefix]))
+    {
+      edits.add(new Edit(EQUAL, a[aStart + prefix]));
+      prefix++;
+    }
+    aStart += prefix;
+    bStart += prefix;
+
+    int suffix = 0;
+    while (aEnd - suffix > aStart && bEnd - suffix > bStart &&
+        a[aEnd - suffix - 1].equals(b[bEnd - suffix - 1]))
+    {
+      suffix++;
+    }
+    aEnd -= suffix;
+    bEnd -= suffix;
+
+    if (aStart == aEnd || bStart == bEnd){
+      replace(a, aStart, aEnd, b, bStart, bEnd, edits);
+    }else{
+      int[] split = middleSnake(a, aStart, aEnd, b, bStart, bEnd);
+      if (split == null){
+        replace(a, aStart, aEnd, b, bStart, bEnd, edits);
+      }else{
+        myers(a, aStart, split[0], b, bStart, split[1], edits);
+        myers(a, split[0], aEnd, b, split[1], bEnd, edits);
+      }
+    }
+
+    for (int ii = aEnd; ii < aEnd + suffix; ii++){
+      edits.add(new Edit(EQUAL, a[ii]));
+    }
+  }
+
+  /**
+   * Runs the forward and reverse searches simultaneously until they overlap,
+   * returning the point (in a and b) where the forward path meets the reverse
+   * one, or, once MAX_COST edits have been explored, the furthest point the
+   * forward search reached. Returns null if the regions have no lines in
+   * common.
+   */
+  private static int[] middleSnake(
+      String[] a, int aStart, int aEnd,
+      String[] b, int bStart, int bEnd)
+  {
+    int n = aEnd - aStart;
+    int m = bEnd - bStart;
+    int max = (n + m + 1) / 2;
+    int offset = max + 1;
+    int length = 2 * max + 3;
+    int delta = n - m;
+    // with an odd delta the forward search detects the overlap, otherwise
+    // the reverse one does.
+    boolean front = delta % 2 != 0;
+
+    // furthest x reached on each diagonal by the forward search, and the
+    // furthest distance from the end reached by the reverse search.
+    int[] forward = new int[length];
+    int[] reverse = new int[length];
+    Arrays.fill(forward, -1);
+    Arrays.fill(reverse, -1);
+    forward[offset + 1] = 0;
+    reverse[offset + 1] = 0;
+
+    // diagonals which have run off the right or bottom edge are trimmed.
+    int forwardStart = 0;
+    int forwardEnd = 0;
+    int reverseStart = 0;
+    int reverseEnd = 0;
+    int d = 0;
+    for (; d < max && d < MAX_COST; d++){
+      for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2){
+        int x;
+        if (k == -d ||
+            (k != d && forward[offset + k - 1] < forward[offset + k + 1]))
+        {
+          x = forward[offset + k + 1];
+        }else{
+          x = forward[offset + k - 1] + 1;
+        }
+        int y = x - k;
+        while (x < n && y < m && a[aStart + x].equals(b[bStart + y])){
+          x++;
+          y++;
+        }
+        forward[offset + k] = x;
+        if (x > n){
+          forwardEnd += 2;
+        }else if (y > m){
+          forwardStart += 2;
+        }else if (front){
+          int reverseK = offset + delta - k;
+          if (reverseK >= 0 && reverseK < length && reverse[reverseK] != -1 &&
+              x >= n - reverse[reverseK])
+          {
+            return new int[]{aStart + x, bStart + y};
+          }
+        }
+      }
+
+      for (int k = -d + reverseStart; k <= d - reverseEnd; k += 2){
+        int x;
+        if (k == -d ||
+            (k != d && reverse[offset + k - 1] < reverse[offset + k + 1]))
+        {
+          x = reverse[offset + k + 1];
+        }else{
+          x = reverse[offset + k - 1] + 1;
+        }
+        int y = x - k;
+        while (x < n && y < m &&
+            a[aEnd - x - 1].equals(b[bEnd - y - 1]))
+        {
+          x++;
+          y++;
+        }
+        reverse[offset + k] = x;
+        if (x > n){
+          reverseEnd += 2;
+        }else if (y > m){
+          reverseStart += 2;
+        }else if (!front){
+          int forwardK = offset + delta - k;
+          if (forwardK >= 0 && forwardK < length && forward[forwardK] != -1){
+            int forwardX = forward[forwardK];
+            int forwardY = forwardX - (forwardK - offset);
+            if (forwardX >= n - x){
+              return new int[]{aStart + forwardX, bStart + forwardY};
+            }
+          }
+        }
+      }
+    }
+
+    if (d == max){
+      return null;
+    }
+
+    // too expensive: split at the furthest reaching forward path, which must
+    // be short of the end since no path of this cost reached it.
+    int bestX = 0;
+    int bestY = 0;
+    d--;
+    for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2){
+      int x = forward[offset + k];
+      int y = x - k;
+      if (x <= n && y <= m && x + y > bestX + bestY){
+        bestX = x;
+        bestY = y;
+      }
+    }
+    if (bestX + bestY == 0 || (bestX == n && bestY == m)){
+      return null;
+    }
+    return new int[]{aStart + bestX, bStart + bestY};
+  }
+
+  private static void replace(
+      String[] a, int aStart, int aEnd,
+      String[] b, int bStart, int bEnd,
+      List<Edit> edits)
+  {
+    for (int ii = aStart; ii < aEnd; ii++){
+      edits.add(new Edit(DELETE, a[ii]));
+    }
+    for (int ii = bStart; ii < bEnd; ii++){
+      edits.add(new Edit(INSERT, b[ii]));
+    }
+  }
+
+  /**
+   * A single hunk of a unified diff.
+   */
+  public static class Hunk
+  {
+    private int originalStart;
+    private int originalCount;
+    private int revisedStart;
+    private int revisedCount;
+    private ArrayList<String> lines = new ArrayList<String>();
+
+    /**
+     * Gets the hunk header, ex. "@@ -1,4 +1,5 @@".
+     *
+     * @return The header.
+     */
+    public String getHeader()
+    {
+      return "@@ -" + originalStart + ',' + originalCount +
+        " +" + revisedStart + ',' + revisedCount + " @@";
+    }
+
+    /**
+     * Gets the hunk's lines, each prefixed with ' ', '-', or '+'.
+     *
+     * @return List of lines.
+     */
+    public List<String> getLines()
+    {
+      return lines;
+    }
+  }
+
+  private static class Edit
+  {
+    public final char type;
+    public final String line;
+
+    public Edit(char type, String line)
+    {
+      this.type = type;
+      this.line = line;
+    }
+  }
+}
@@ -0,0 +1,443 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.problems;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclim.logging.Logger;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IMarkerDelta;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * In memory index of the problem markers for each file, kept current from the
+ * marker deltas of resource change events.
+ * <p/>
+ * Projects are indexed on first request. Every update to a file's problems is
+ * stamped with a new version number, allowing clients to request only the
+ * files whose problems changed since a version they previously received.
+ * Files whose problems are all resolved keep an empty entry so that clients
+ * polling for changes are notified of the removal.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class ProblemIndex
+  implements IResourceChangeListener
+{
+  private static final Logger logger = Logger.getLogger(ProblemIndex.class);
+
+  private static final String[] ATTRIBUTES = {
+    IMarker.MESSAGE, IMarker.SEVERITY, IMarker.CHAR_START, IMarker.LINE_NUMBER,
+  };
+
+  private static final Problem[] NONE = new Problem[0];
+
+  private static ProblemIndex instance = new ProblemIndex();
+
+  // seeded with the current time so that versions handed out before a restart
+  // of eclimd are always older than those handed out after it.
+  private AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+  private ConcurrentHashMap<String,ProjectProblems> projects =
+    new ConcurrentHashMap<String,ProjectProblems>();
+
+  private ProblemIndex()
+  {
+  }
+
+  /**
+   * Gets the shared index instance.
+   *
+   * @return The ProblemIndex.
+   */
+  public static ProblemIndex getInstance()
+  {
+    return instance;
+  }
+
+  /**
+   * Gets the current version of the index.
+   *
+   * @return The version.
+   */
+  public long getVersion()
+  {
+    return version.get();
+  }
+
+  /**
+   * Indexes the supplied project if it hasn't been already (and is open,
+   * closed projects cannot be indexed). Since indexing advances the index
+   * version, callers handing out versions should index the projects they
+   * query before obtaining the version via {@link #getVersion()}.
+   *
+   * @param project The project.
+   */
+  public void index(IProject project)
+    throws Exception
+  {
+    getProjectProblems(project);
+  }
+
+  /**
+   * Gets the problems, grouped by file, for the supplied project, indexing
+   * the project first if necessary (and possible, closed projects cannot be
+   * indexed).
+   *
+   * @param project The project.
+   * @param since Only return files whose problems changed after this version
+   * (-1 to return all files which have problems).
+   * @return List of FileProblems.
+   */
+  public List<FileProblems> getProblems(IProject project, long since)
+    throws Exception
+  {
+    ProjectProblems problems = getProjectProblems(project);
+    ArrayList<FileProblems> results = new ArrayList<FileProblems>();
+    for (FileProblems file : problems.files.values()){
+      if (since < 0 ? file.problems.length > 0 : file.version > since){
+        results.add(file);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * {@inheritDoc}
+   * @see IResourceChangeListener#resourceChanged(IResourceChangeEvent)
+   */
+  @Override
+  public void resourceChanged(IResourceChangeEvent event)
+  {
+    IResourceDelta delta = event.getDelta();
+    if (delta == null){
+      return;
+    }
+
+    // projects closed or removed
+    for (IResourceDelta child : delta.getAffectedChildren()){
+      IResource resource = child.getResource();
+      if (resource.getType() == IResource.PROJECT &&
+          (child.getKind() == IResourceDelta.REMOVED ||
+           ((child.getFlags() & IResourceDelta.OPEN) != 0 &&
+            !resource.isAccessible())))
+      {
+        clear(resource.getName());
+      }
+    }
+
+    HashSet<IResource> changed = new HashSet<IResource>();
+    for (IMarkerDelta markerDelta : event.findMarkerDeltas(IMarker.PROBLEM, true)){
+      changed.add(markerDelta.getResource());
+    }
+
+    for (IResource resource : changed){
+      ProjectProblems problems = projects.get(resource.getProject().getName());
+      if (problems == null || !problems.indexed){
+        continue;
+      }
+
+      try{
+        IMarker[] markers = resource.exists() ?
+          resource.findMarkers(IMarker.PROBLEM, true, IResource.DEPTH_ZERO) :
+          new IMarker[0];
+        FileProblems file = createFileProblems(resource, markers);
+        if (file != null){
+          problems.files.put(file.resource, file);
+        }
+      }catch(CoreException ce){
+        logger.warn("Unable to update problems for: " + resource, ce);
+      }
+    }
+  }
+
+  private ProjectProblems getProjectProblems(IProject project)
+    throws Exception
+  {
+    ProjectProblems problems = projects.get(project.getName());
+    if (problems == null){
+      problems = new ProjectProblems();
+      ProjectProblems existing =
+        projects.putIfAbsent(project.getName(), problems);
+      if (existing != null){
+        problems = existing;
+      }
+    }
+    if (!problems.indexed && project.isAccessible()){
+      index(project, problems);
+    }
+    return problems;
+  }
+
+  /**
+   * Builds the index for the supplied project.
+   *
+   * @param project The project.
+   * @param problems The project's index entry.
+   */
+  private void index(IProject project, ProjectProblems problems)
+    throws Exception
+  {
+    synchronized(problems){
+      if (problems.indexed){
+        return;
+      }
+
+      // flag the project as indexed before reading its markers so that any
+      // changes made while we are reading them are applied by the listener,
+      // then take care not to overwrite those newer entries.
+      long start = version.get();
+      problems.indexed = true;
+
+      HashMap<IResource,List<IMarker>> byResource =
+        new HashMap<IResource,List<IMarker>>();
+      IMarker[] markers =
+        project.findMarkers(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE);
+      for (IMarker marker : markers){
+        List<IMarker> list = byResource.get(marker.getResource());
+        if (list == null){
+          list = new ArrayList<IMarker>();
+          byResource.put(marker.getResource(), list);
+        }
+        list.add(marker);
+      }
+
+      HashSet<String> indexed = new HashSet<String>();
+      for (IResource resource : byResource.keySet()){
+        List<IMarker> list = byResource.get(resource);
+        FileProblems file = createFileProblems(
+            resource, list.toArray(new IMarker[list.size()]));
+        if (file != null){
+          indexed.add(file.resource);
+          replace(problems, file, start);
+        }
+      }
+
+      // entries left over from before the project was closed.
+      for (FileProblems file : problems.files.values()){
+        if (!indexed.contains(file.resource) && file.problems.length > 0){
+          replace(problems, file.clear(version.incrementAndGet()), start);
+        }
+      }
+    }
+  }
+
+  /**
+   * Replaces the entry for a file, unless the current entry was updated after
+   * the supplied version.
+   *
+   * @param problems The project's index entry.
+   * @param file The new file entry.
+   * @param since The version.
+   */
+  private void replace(ProjectProblems problems, FileProblems file, long since)
+  {
+    while (true){
+      FileProblems existing = problems.files.get(file.resource);
+      if (existing == null){
+        if (problems.files.putIfAbsent(file.resource, file) == null){
+          return;
+        }
+      }else if (existing.version > since){
+        return;
+      }else if (problems.files.replace(file.resource, existing, file)){
+        return;
+      }
+    }
+  }
+
+  /**
+   * Empties the entries of a closed or deleted project so clients polling for
+   * changes are notified, and flags the project to be re-indexed on its next
+   * request.
+   *
+   * @param name The project name.
+   */
+  private void clear(String name)
+  {
+    ProjectProblems problems = projects.get(name);
+    if (problems == null){
+      return;
+    }
+
+    synchronized(problems){
+      problems.indexed = false;
+      for (FileProblems file : problems.files.values()){
+        if (file.problems.length > 0){
+          problems.files.put(
+              file.resource, file.clear(version.incrementAndGet()));
+        }
+      }
+    }
+  }
+
+  private FileProblems createFileProblems(IResource resource, IMarker[] markers)
+  {
+    IPath location = resource.getLocation();
+    if (resource.getRawLocation() == null || location == null){
+      return null;
+    }
+
+    ArrayList<Problem> problems = new ArrayList<Problem>(markers.length);
+    for (IMarker marker : markers){
+      try{
+        Object[] attributes = marker.getAttributes(ATTRIBUTES);
+        problems.add(new Problem(
+              (String)attributes[0],
+              attributes[1] != null ?
+                ((Integer)attributes[1]).intValue() : IMarker.SEVERITY_WARNING,
+              attributes[2] != null ? ((Integer)attributes[2]).intValue() : 1,
+              attributes[3] != null ? ((Integer)attributes[3]).intValue() : 1));
+      }catch(CoreException ignore){
+        // marker removed since obtaining our list.
+      }
+    }
+
+    return new FileProblems(
+        resource.getProject().getName(),
+        resource.getFullPath().toString(),
+        location.toOSString().replace('\\', '/'),
+        version.incrementAndGet(),
+        problems.toArray(new Problem[problems.size()]));
+  }
+
+  /**
+   * The file entries of a single project.
+   */
+  private static class ProjectProblems
+  {
+    public volatile boolean indexed;
+    public ConcurrentHashMap<String,FileProblems> files =
+      new ConcurrentHashMap<String,FileProblems>();
+  }
+
+  /**
+   * The problems of a single file (or other resource) at a given version.
+   */
+  public static class FileProblems
+  {
+    private String project;
+    private String resource;
+    private String path;
+    private long version;
+    private Problem[] problems;
+
+    private FileProblems(
+        String project,
+        String resource,
+        String path,
+        long version,
+        Problem[] problems)
+    {
+      this.project = project;
+      this.resource = resource;
+      this.path = path;
+      this.version = version;
+      this.problems = problems;
+    }
+
+    private FileProblems clear(long version)
+    {
+      return new FileProblems(project, resource, path, version, NONE);
+    }
+
+    public String getProject()
+    {
+      return project;
+    }
+
+    /**
+     * Gets the absolute path of the file on disk.
+     *
+     * @return The file path.
+     */
+    public String getPath()
+    {
+      return path;
+    }
+
+    public long getVersion()
+    {
+      return version;
+    }
+
+    public Problem[] getProblems()
+    {
+      return problems;
+    }
+  }
+
+  /**
+   * Compact record of a single problem marker.
+   */
+  public static class Problem
+  {
+    private String message;
+    private int severity;
+    private int offset;
+    private int line;
+
+    private Problem(String message, int severity, int offset, int line)
+    {
+      this.message = message;
+      this.severity = severity;
+      this.offset = offset;
+      this.line = line;
+    }
+
+    public String getMessage()
+    {
+      return message;
+    }
+
+    public boolean isError()
+    {
+      return severity == IMarker.SEVERITY_ERROR;
+    }
+
+    /**
+     * Gets the char offset of the start of the problem, or a value less than 1
+     * if unknown.
+     *
+     * @return The char offset.
+     */
+    public int getOffset()
+    {
+      return offset;
+    }
+
+    public int getLine()
+    {
+      return line;
+    }
+  }
+}
@@ -18,17 +18,16 @@ package org.eclim.plugin.core.command.problems;
 
 import java.io.File;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-
 import java.text.Collator;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import java.util.concurrent.Callable;
 
 import java.util.regex.Pattern;
 
@@ -38,36 +37,27 @@ import org.eclim.command.CommandLine;
 import org.eclim.command.Error;
 import org.eclim.command.Options;
 
-import org.eclim.plugin.core.CorePlugin;
+import org.eclim.plugin.core.BuildTracker;
 
 import org.eclim.plugin.core.command.AbstractCommand;
 
+import org.eclim.plugin.core.util.ParallelUtils;
 import org.eclim.plugin.core.util.ProjectUtils;
 
 import org.eclim.util.CollectionUtils;
 
-import org.eclim.util.file.FileUtils;
-
-import org.eclipse.core.internal.resources.ResourceException;
+import org.eclim.util.file.FileOffsets;
 
-import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IResource;
-
-import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.NullProgressMonitor;
-
-import org.eclipse.ui.IPageLayout;
-
-import org.eclipse.ui.internal.views.markers.CachedMarkerBuilder;
-import org.eclipse.ui.internal.views.markers.ExtendedMarkersView;
-import org.eclipse.ui.internal.views.markers.MarkerContentGenerator;
-
-import org.eclipse.ui.views.markers.internal.ContentGeneratorDescriptor;
-import org.eclipse.ui.views.markers.internal.MarkerSupportRegistry;
 
 /**
  * Command to retrieve a list of global eclipse problems.
+ * <p/>
+ * Problems are served from the {@link ProblemIndex}. When the since option is
+ * supplied, only the problems of files which changed after that index version
+ * are returned, along with the list of those files (including files which no
+ * longer have any problems) and the current index version to supply on the
+ * next request.
  *
  * @author Eric Van Dewoestine
  */
@@ -75,125 +65,115 @@ import org.eclipse.ui.views.markers.internal.MarkerSupportRegistry;
   name = "problems",
   options =
     "REQUIRED p project ARG," +
-    "OPTIONAL e errors NOARG"
+    "OPTIONAL e errors NOARG," +
+    "OPTIONAL s since ARG," +
+    "OPTIONAL t timeout ARG"
 )
 public class ProblemsCommand
   extends AbstractCommand
 {
+  private static final long BUILD_TIMEOUT = 3000;
+
   /**
    * {@inheritDoc}
    */
-  @SuppressWarnings("rawtypes")
   public Object execute(CommandLine commandLine)
     throws Exception
   {
-    waitOnBuild();
+    long timeout = commandLine.getLongValue(Options.TIMEOUT_OPTION);
+    BuildTracker.getInstance().waitForBuild(
+        timeout >= 0 ? timeout : BUILD_TIMEOUT);
 
     String name = commandLine.getValue(Options.PROJECT_OPTION);
     boolean errorsOnly = commandLine.hasOption(Options.ERRORS_OPTION);
+    long since = commandLine.getLongValue(Options.SINCE_OPTION);
     IProject project = ProjectUtils.getProject(name);
 
-    ContentGeneratorDescriptor descriptor =
-      MarkerSupportRegistry.getInstance().getDefaultContentGenDescriptor();
-
-    ExtendedMarkersView view = new ExtendedMarkersView(descriptor.getId());
-    String viewId = IPageLayout.ID_PROBLEM_VIEW;
-    MarkerContentGenerator generator = new MarkerContentGenerator(
-        descriptor, new CachedMarkerBuilder(view), viewId);
+    final ProblemIndex index = ProblemIndex.getInstance();
 
-    // hack to disable loading the gui configured filters
-    Field enabledFilters = MarkerContentGenerator.class
-      .getDeclaredField("enabledFilters");
-    enabledFilters.setAccessible(true);
-    enabledFilters.set(generator, new HashSet());
-
-    Method gatherMarkers = MarkerContentGenerator.class
-      .getDeclaredMethod("gatherMarkers",
-          String[].class, Boolean.TYPE, Collection.class, IProgressMonitor.class);
-    gatherMarkers.setAccessible(true);
-
-    ArrayList markers = new ArrayList();
-    gatherMarkers.invoke(generator,
-        generator.getTypes(), true, markers, new NullProgressMonitor());
-
-    ArrayList<Error> problems = new ArrayList<Error>();
-    if (markers.size() == 0){
-      return problems;
-    }
-
-    ArrayList<IProject> projects = new ArrayList<IProject>();
+    // only query the project and those which reference or are referenced by
+    // it rather than gathering every marker in the workspace.
+    LinkedHashSet<IProject> projects = new LinkedHashSet<IProject>();
     projects.add(project);
     CollectionUtils.addAll(projects, project.getReferencedProjects());
     CollectionUtils.addAll(projects, project.getReferencingProjects());
 
-    Method getMarker = null;
-    for (Object markerEntry : markers){
-      if (getMarker == null){
-        getMarker = markerEntry.getClass().getDeclaredMethod("getMarker");
-        getMarker.setAccessible(true);
-      }
-      try{
-        IMarker marker = (IMarker)getMarker.invoke(markerEntry);
-        Map<String,Object> attributes = marker.getAttributes();
-        int severity = attributes.containsKey("severity") ?
-          ((Integer)attributes.get("severity")).intValue() :
-          IMarker.SEVERITY_WARNING;
-
-        // would be more correct to use eclipse marker filter groups, but
-        // setting those may be more trouble than they're worth. look into them
-        // though if this doesn't prove to be fast enough.
-        if(errorsOnly && severity != IMarker.SEVERITY_ERROR){
-          continue;
-        }
-
-        IResource resource = marker.getResource();
-        if (resource == null || resource.getRawLocation() == null){
-          continue;
-        }
-
-        if (!projects.contains(resource.getProject())){
-          continue;
+    // index any projects not yet indexed before obtaining the version, since
+    // indexing stamps files with new versions. Anything changed after the
+    // version is read is then returned again on the next request rather than
+    // being missed.
+    ArrayList<Callable<Object>> indexes = new ArrayList<Callable<Object>>();
+    for (final IProject p : projects){
+      indexes.add(new Callable<Object>(){
+        public Object call()
+          throws Exception
+        {
+          index.index(p);
+          return null;
         }
+      });
+    }
+    ParallelUtils.invokeAll(indexes);
+    long version = index.getVersion();
 
-        int offset = attributes.containsKey("charStart") ?
-          ((Integer)attributes.get("charStart")).intValue() : 1;
-        int line = attributes.containsKey("lineNumber") ?
-          ((Integer)attributes.get("lineNumber")).intValue() : 1;
-        int[] pos = {1, 1};
-
-        String message = (String)attributes.get("message");
-        String path = resource.getLocation().toOSString().replace('\\', '/');
-        File file = new File(path);
-        if (file.isFile() && file.exists() && offset > 0){
-          pos = FileUtils.offsetToLineColumn(path, offset);
-        }
-        problems.add(new Error(
-              message,
-              path,
-              Math.max(pos[0], line),
-              pos[1],
-              severity != IMarker.SEVERITY_ERROR));
-      }catch(ResourceException ignore){
-        // race condition, i think, where we are attempting to obtain a
-        // marker that has been removed since obtaining our list.
+    ArrayList<String> files = new ArrayList<String>();
+    ArrayList<Error> problems = new ArrayList<Error>();
+    for (IProject p : projects){
+      for (ProblemIndex.FileProblems file : index.getProblems(p, since)){
+        files.add(file.getPath());
+        addProblems(problems, file, errorsOnly);
       }
     }
 
     Collections.sort(problems, new ProblemComparator(project));
 
-    return problems;
+    if (since < 0){
+      return problems;
+    }
+
+    HashMap<String,Object> results = new HashMap<String,Object>();
+    results.put("version", version);
+    results.put("files", files);
+    results.put("problems", problems);
+    return results;
   }
 
-  private void waitOnBuild()
+  /**
+   * Adds Error instances for the supplied file's problems to the supplied
+   * list.
+   *
+   * @param problems The list to add to.
+   * @param file The file's indexed problems.
+   * @param errorsOnly true to only include errors, false to include warnings.
+   */
+  private void addProblems(
+      List<Error> problems, ProblemIndex.FileProblems file, boolean errorsOnly)
   {
-    CorePlugin plugin = CorePlugin.getDefault();
-    int tries = 0;
-    while(tries < 30 && plugin.isBuildRunning()){
-      try{
-        Thread.sleep(100);
-      }catch(Exception ignore){
+    String path = file.getPath();
+    FileOffsets offsets = null;
+    for (ProblemIndex.Problem problem : file.getProblems()){
+      // would be more correct to use eclipse marker filter groups, but
+      // setting those may be more trouble than they're worth. look into them
+      // though if this doesn't prove to be fast enough.
+      if(errorsOnly && !problem.isError()){
+        continue;
+      }
+
+      int[] pos = {1, 1};
+      if (problem.getOffset() > 0){
+        if (offsets == null && new File(path).isFile()){
+          offsets = FileOffsets.compileCached(path);
+        }
+        if (offsets != null){
+          pos = offsets.offsetToLineColumn(problem.getOffset());
+        }
       }
-      tries++;
+      problems.add(new Error(
+            problem.getMessage(),
+            path,
+            Math.max(pos[0], problem.getLine()),
+            pos[1],
+            !problem.isError()));
     }
   }
 
@@ -23,6 +23,13 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclim.Services;
 
@@ -31,26 +38,52 @@ import org.eclim.annotation.Command;
 import org.eclim.command.CommandLine;
 import org.eclim.command.Options;
 
+import org.eclim.logging.Logger;
+
 import org.eclim.plugin.core.command.AbstractCommand;
 
+import org.eclim.plugin.core.util.ParallelUtils;
 import org.eclim.plugin.core.util.ProjectUtils;
 
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceDescription;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.resources.ResourcesPlugin;
 
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
 
 import org.eclipse.ui.internal.wizards.datatransfer.WizardProjectsImportPage;
 
 /**
- * Command to import a project from a folder.
+ * Command to import a project from a folder, or, in recursive mode, all the
+ * projects found under a folder.
  *
  * @author Eric Van Dewoestine
  */
-@Command(name = "project_import", options = "REQUIRED f folder ARG")
+@Command(
+  name = "project_import",
+  options =
+    "REQUIRED f folder ARG," +
+    "OPTIONAL r recursive NOARG"
+)
 public class ProjectImportCommand
   extends AbstractCommand
 {
+  private static final Logger logger =
+    Logger.getLogger(ProjectImportCommand.class);
+
+  private static final String DOT_PROJECT =
+    IProjectDescription.DESCRIPTION_FILE_NAME;
+  private static final String METADATA = ".metadata";
+
   /**
    * {@inheritDoc}
    */
@@ -66,6 +99,10 @@ public class ProjectImportCommand
       return Services.getMessage("project.directory.missing", folder);
     }
 
+    if (commandLine.hasOption(Options.RECURSIVE_OPTION)){
+      return importAll(new File(folder));
+    }
+
     File dotproject = new File(folder + "/.project");
     if (!dotproject.exists()){
       return Services.getMessage("project.dotproject.missing", folder);
@@ -107,4 +144,206 @@ public class ProjectImportCommand
 
     return Services.getMessage("project.imported", projectName);
   }
+
+  /**
+   * Imports all the projects found under the supplied directory, creating and
+   * opening them in a single workspace operation with auto building
+   * suspended, followed by one workspace build.
+   *
+   * @param dir The root directory to search.
+   * @return List of results, one per project found.
+   */
+  private List<HashMap<String,Object>> importAll(File dir)
+    throws Exception
+  {
+    final IWorkspace workspace = ResourcesPlugin.getWorkspace();
+
+    List<File> dotprojects = findProjects(dir);
+    ArrayList<Callable<Import>> parsers = new ArrayList<Callable<Import>>();
+    for (final File dotproject : dotprojects){
+      parsers.add(new Callable<Import>(){
+        public Import call()
+          throws Exception
+        {
+          return new Import(workspace, dotproject);
+        }
+      });
+    }
+    final List<Import> imports = ParallelUtils.invokeAll(parsers);
+
+    IWorkspaceDescription description = workspace.getDescription();
+    boolean autobuild = description.isAutoBuilding();
+    if (autobuild){
+      description.setAutoBuilding(false);
+      workspace.setDescription(description);
+    }
+
+    try{
+      workspace.run(new IWorkspaceRunnable(){
+        public void run(IProgressMonitor monitor)
+          throws CoreException
+        {
+          for (Import imprt : imports){
+            imprt.create(workspace, monitor);
+          }
+        }
+      }, workspace.getRoot(), IWorkspace.AVOID_UPDATE, new NullProgressMonitor());
+
+      if (autobuild){
+        workspace.build(
+            IncrementalProjectBuilder.INCREMENTAL_BUILD,
+            new NullProgressMonitor());
+      }
+    }finally{
+      if (autobuild){
+        description = workspace.getDescription();
+        description.setAutoBuilding(true);
+        workspace.setDescription(description);
+      }
+    }
+
+    ArrayList<HashMap<String,Object>> results =
+      new ArrayList<HashMap<String,Object>>();
+    for (Import imprt : imports){
+      HashMap<String,Object> result = new HashMap<String,Object>();
+      result.put("name", imprt.name);
+      result.put("folder", imprt.dir.getPath().replace('\\', '/'));
+      result.put("imported", imprt.imported);
+      result.put("message", imprt.message);
+      results.add(result);
+    }
+    return results;
+  }
+
+  /**
+   * Searches the supplied directory for .project files, scanning each level
+   * of the directory tree in parallel. Like eclipse's import wizard, the
+   * search does not descend into directories which contain a .project file or
+   * into workspace metadata directories.
+   *
+   * @param dir The root directory.
+   * @return List of .project files found.
+   */
+  private List<File> findProjects(File dir)
+    throws Exception
+  {
+    final Set<String> seen =
+      Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+    ArrayList<File> dotprojects = new ArrayList<File>();
+    List<File> level = new ArrayList<File>();
+    level.add(dir);
+
+    int threads = ParallelUtils.getThreadCount();
+    while (!level.isEmpty()){
+      int chunk = Math.max(level.size() / threads, 1);
+      ArrayList<Callable<List<File>[]>> scanners =
+        new ArrayList<Callable<List<File>[]>>();
+      for (int ii = 0; ii < level.size(); ii += chunk){
+        final List<File> dirs =
+          level.subList(ii, Math.min(ii + chunk, level.size()));
+        scanners.add(new Callable<List<File>[]>(){
+          @SuppressWarnings("unchecked")
+          public List<File>[] call()
+            throws Exception
+          {
+            ArrayList<File> found = new ArrayList<File>();
+            ArrayList<File> children = new ArrayList<File>();
+            for (File dir : dirs){
+              // guard against symlink cycles.
+              if (!seen.add(dir.getCanonicalPath())){
+                continue;
+              }
+
+              File dotproject = new File(dir, DOT_PROJECT);
+              if (dotproject.isFile()){
+                found.add(dotproject);
+                continue;
+              }
+
+              File[] files = dir.listFiles();
+              if (files == null){
+                continue;
+              }
+              for (File file : files){
+                if (file.isDirectory() && !METADATA.equals(file.getName())){
+                  children.add(file);
+                }
+              }
+            }
+            return new List[]{found, children};
+          }
+        });
+      }
+
+      List<File> next = new ArrayList<File>();
+      for (List<File>[] result : ParallelUtils.invokeAll(scanners)){
+        dotprojects.addAll(result[0]);
+        next.addAll(result[1]);
+      }
+      level = next;
+    }
+    return dotprojects;
+  }
+
+  /**
+   * Holds the state of a single project during a bulk import.
+   */
+  private static class Import
+  {
+    public File dir;
+    public String name;
+    public IProjectDescription description;
+    public boolean imported;
+    public String message;
+
+    public Import(IWorkspace workspace, File dotproject)
+    {
+      dir = dotproject.getParentFile();
+      try{
+        description = workspace.loadProjectDescription(
+            new Path(dotproject.getAbsolutePath()));
+        name = description.getName();
+
+        // projects located directly under the workspace root must use the
+        // default location.
+        IPath location = new Path(dir.getAbsolutePath());
+        IPath root = workspace.getRoot().getLocation();
+        if (root.equals(location.removeLastSegments(1)) &&
+            name.equals(location.lastSegment()))
+        {
+          description.setLocation(null);
+        }else{
+          description.setLocation(location);
+        }
+      }catch(CoreException ce){
+        logger.error("Unable to load project description: " + dotproject, ce);
+        name = dir.getName();
+        message = Services.getMessage("project.import.failed", name);
+      }
+    }
+
+    public void create(IWorkspace workspace, IProgressMonitor monitor)
+    {
+      if (description == null){
+        return;
+      }
+
+      IProject project = workspace.getRoot().getProject(name);
+      if (project.exists()){
+        message = Services.getMessage(
+            "project.name.exists", name, dir.getPath().replace('\\', '/'));
+        return;
+      }
+
+      try{
+        project.create(description, monitor);
+        project.open(IResource.BACKGROUND_REFRESH, monitor);
+        imported = true;
+        message = Services.getMessage("project.imported", name);
+      }catch(CoreException ce){
+        logger.error("Unable to import project: " + name, ce);
+        message = Services.getMessage("project.import.failed", name);
+      }
+    }
+  }
 }
@@ -1,5 +1,5 @@
 /**
- * Copyright (C) 2005 - 2011  Eric Van Dewoestine
+ * Copyright (C) 2005 - 2012  Eric Van Dewoestine
  *
  * This program is free software: you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -18,6 +18,7 @@ package org.eclim.plugin.core.command.project;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 import org.eclim.annotation.Command;
 
@@ -26,13 +27,11 @@ import org.eclim.command.Options;
 
 import org.eclim.plugin.core.command.AbstractCommand;
 
+import org.eclim.plugin.core.project.ProjectCatalog;
 import org.eclim.plugin.core.project.ProjectNatureFactory;
 
 import org.eclim.plugin.core.util.ProjectUtils;
 
-import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.ResourcesPlugin;
-
 /**
  * Command which lists all projects and their status.
  *
@@ -40,7 +39,11 @@ import org.eclipse.core.resources.ResourcesPlugin;
  */
 @Command(
   name = "project_list",
-  options = "OPTIONAL n nature ARG"
+  options =
+    "OPTIONAL n nature ARG," +
+    "OPTIONAL x prefix ARG," +
+    "OPTIONAL o offset ARG," +
+    "OPTIONAL l limit ARG"
 )
 public class ProjectListCommand
   extends AbstractCommand
@@ -51,30 +54,39 @@ public class ProjectListCommand
   public Object execute(CommandLine commandLine)
     throws Exception
   {
-    IProject[] projects = ResourcesPlugin.getWorkspace().getRoot().getProjects();
-    String natureId = null;
+    String prefix = commandLine.getValue(Options.PREFIX_OPTION);
+    int offset = Math.max(commandLine.getIntValue(Options.OFFSET_OPTION), 0);
+    int limit = commandLine.getIntValue(Options.LIMIT_OPTION);
+
+    ProjectCatalog catalog = ProjectCatalog.getInstance();
+    List<ProjectCatalog.Entry> projects = null;
     if(commandLine.hasOption(Options.NATURE_OPTION)){
       String alias = commandLine.getValue(Options.NATURE_OPTION);
-      natureId = ProjectNatureFactory.getNatureForAlias(alias);
-      ArrayList<IProject> filtered = new ArrayList<IProject>();
-      for (IProject project : projects){
-        if (project.isOpen() && project.hasNature(natureId)){
+      String natureId = ProjectNatureFactory.getNatureForAlias(alias);
+      ArrayList<ProjectCatalog.Entry> filtered =
+        new ArrayList<ProjectCatalog.Entry>();
+      for (ProjectCatalog.Entry project : catalog.getProjects(prefix, 0, -1)){
+        if (project.isOpen() && ProjectNatureFactory.hasNature(
+              ProjectUtils.getProject(project.getName()), natureId))
+        {
           filtered.add(project);
         }
       }
-      projects = (IProject[])filtered.toArray(new IProject[filtered.size()]);
+      int end = limit >= 0 ?
+        Math.min(filtered.size(), offset + limit) : filtered.size();
+      projects = filtered.subList(Math.min(offset, end), end);
+    }else{
+      projects = catalog.getProjects(prefix, offset, limit);
     }
 
     ArrayList<HashMap<String,Object>> results =
       new ArrayList<HashMap<String,Object>>();
-    for(IProject project : projects){
-      if(project.exists()){
-        HashMap<String,Object> result = new HashMap<String,Object>();
-        result.put("name", project.getName());
-        result.put("path", ProjectUtils.getPath(project));
-        result.put("open", project.isOpen());
-        results.add(result);
-      }
+    for(ProjectCatalog.Entry project : projects){
+      HashMap<String,Object> result = new HashMap<String,Object>();
+      result.put("name", project.getName());
+      result.put("path", project.getPath());
+      result.put("open", project.isOpen());
+      results.add(result);
     }
     return results;
   }
@@ -16,36 +16,17 @@
  */
 package org.eclim.plugin.core.command.project;
 
-import java.io.File;
-
 import java.util.ArrayList;
 import java.util.HashMap;
 
 import org.eclim.annotation.Command;
 
 import org.eclim.command.CommandLine;
+import org.eclim.command.Options;
 
 import org.eclim.plugin.core.command.AbstractCommand;
 
-import org.eclim.plugin.core.project.ProjectNatureFactory;
-
-import org.eclim.plugin.core.util.ProjectUtils;
-
-import org.eclipse.core.filesystem.EFS;
-import org.eclipse.core.filesystem.IFileStore;
-
-import org.eclipse.core.internal.resources.LinkDescription;
-import org.eclipse.core.internal.resources.Project;
-import org.eclipse.core.internal.resources.ProjectDescription;
-import org.eclipse.core.internal.resources.ProjectInfo;
-import org.eclipse.core.internal.resources.ResourceInfo;
-
-import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.IWorkspace;
-import org.eclipse.core.resources.ResourcesPlugin;
-
-import org.eclipse.core.runtime.IPath;
+import org.eclim.plugin.core.project.ProjectCatalog;
 
 /**
  * Command which obtains a list of projects and project paths for use by clients
@@ -53,7 +34,13 @@ import org.eclipse.core.runtime.IPath;
  *
  * @author Eric Van Dewoestine
  */
-@Command(name = "projects")
+@Command(
+  name = "projects",
+  options =
+    "OPTIONAL x prefix ARG," +
+    "OPTIONAL o offset ARG," +
+    "OPTIONAL l limit ARG"
+)
 public class ProjectsCommand
   extends AbstractCommand
 {
@@ -61,61 +48,22 @@ public class ProjectsCommand
   public Object execute(CommandLine commandLine)
     throws Exception
   {
+    String prefix = commandLine.getValue(Options.PREFIX_OPTION);
+    int offset = Math.max(commandLine.getIntValue(Options.OFFSET_OPTION), 0);
+    int limit = commandLine.getIntValue(Options.LIMIT_OPTION);
+
     ArrayList<HashMap<String,Object>> results =
       new ArrayList<HashMap<String,Object>>();
-    IWorkspace workspace = ResourcesPlugin.getWorkspace();
-    IProject[] projects = workspace.getRoot().getProjects();
-    for (IProject project : projects){
+    for (ProjectCatalog.Entry project :
+        ProjectCatalog.getInstance().getProjects(prefix, offset, limit))
+    {
       HashMap<String,Object> info = new HashMap<String,Object>();
       info.put("name", project.getName());
-
+      info.put("natures", project.getNatures());
+      info.put("path", project.getPath());
       if (project.isOpen()){
-        String[] aliases = ProjectNatureFactory.getProjectNatureAliases(project);
-        if (aliases.length == 0){
-          aliases = new String[]{"none"};
-        }
-        info.put("natures", aliases);
-      }else{
-        info.put("natures", new String[0]);
+        info.put("links", project.getLinks());
       }
-
-      String projectPath = ProjectUtils.getPath(project);
-      info.put("path", projectPath);
-
-      if (project.isOpen()){
-        HashMap<String,String> links = new HashMap<String,String>();
-        if (new File(projectPath).exists()){
-          // don't open/close projects due to the impact on performance
-          /*boolean close = false;
-          if (!project.isOpen()){
-            project.open(IResource.NONE, null);
-            close = true;
-          }*/
-
-          ResourceInfo pinfo = ((Project)project).getResourceInfo(false, false);
-          ProjectDescription desc = ((ProjectInfo)pinfo).getDescription();
-          if (desc != null){
-            HashMap<IPath, LinkDescription> linfo =
-              (HashMap<IPath, LinkDescription>)desc.getLinks();
-            if (linfo != null){
-              for (IPath path : linfo.keySet()){
-                LinkDescription link = linfo.get(path);
-                IResource member = project.findMember(link.getProjectRelativePath());
-                IFileStore store = EFS.getStore(member.getLocationURI());
-                String resolvedPath = store != null ?
-                  store.toString() : link.getLocationURI().getPath();
-                links.put(path.toString(), resolvedPath.replace("\\", "/"));
-              }
-            }
-          }
-
-          /*if (close){
-            project.close(null);
-          }*/
-        }
-        info.put("links", links);
-      }
-
       results.add(info);
     }
 
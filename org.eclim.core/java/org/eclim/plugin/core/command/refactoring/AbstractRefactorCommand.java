@@ -35,6 +35,7 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.ResourcesPlugin;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.SubProgressMonitor;
 
@@ -55,8 +56,10 @@ import org.eclipse.ltk.core.refactoring.TextFileChange;
 public abstract class AbstractRefactorCommand
   extends AbstractCommand
 {
+  private static final String ALL_OPTION = "a";
   private static final String PREVIEW_OPTION = "v";
   private static final String DIFF_OPTION = "d";
+  private static final String SESSION_OPTION = "s";
 
   @Override
   public Object execute(CommandLine commandLine)
@@ -76,32 +79,66 @@ public abstract class AbstractRefactorCommand
 
     try{
       NullProgressMonitor monitor = new NullProgressMonitor();
-      Refactor refactor = createRefactoring(commandLine);
-      Refactoring refactoring = refactor.refactoring;
-
-      RefactoringStatus status = refactoring.checkAllConditions(
-          new SubProgressMonitor(monitor, 4));
-      int stopSeverity = RefactoringCore.getConditionCheckingFailedSeverity();
-      if (status.getSeverity() >= stopSeverity) {
-        throw new RefactorException(status);
+      RefactorSessions sessions = RefactorSessions.getInstance();
+      RefactorSessions.Session session = null;
+      String key = getSessionKey(commandLine);
+      if (commandLine.hasOption(SESSION_OPTION)){
+        session = sessions.get(commandLine.getValue(SESSION_OPTION), key);
       }
 
-      Change change = refactoring.createChange(new SubProgressMonitor(monitor, 2));
-      change.initializeValidationData(new SubProgressMonitor(monitor, 1));
+      // compute the refactoring unless a preview of it is still current.
+      if (session == null){
+        long stamp = sessions.getStamp();
+        Refactor refactor = createRefactoring(commandLine);
+        Refactoring refactoring = refactor.refactoring;
+
+        RefactoringStatus status = refactoring.checkAllConditions(
+            new SubProgressMonitor(monitor, 4));
+        int stopSeverity = RefactoringCore.getConditionCheckingFailedSeverity();
+        if (status.getSeverity() >= stopSeverity) {
+          throw new RefactorException(status);
+        }
+
+        Change change =
+          refactoring.createChange(new SubProgressMonitor(monitor, 2));
+        change.initializeValidationData(new SubProgressMonitor(monitor, 1));
+
+        if (!commandLine.hasOption(PREVIEW_OPTION)){
+          return perform(refactor, change, monitor);
+        }
+
+        // the client doesn't receive a new token with a single file diff, so
+        // don't store a session it can't reference.
+        if (commandLine.hasOption(DIFF_OPTION)){
+          try{
+            return previewChange(change, commandLine.getValue(DIFF_OPTION));
+          }finally{
+            change.dispose();
+          }
+        }
+        session = sessions.add(refactor, change, key, stamp);
+      }
 
       // preview
       if (commandLine.hasOption(PREVIEW_OPTION)){
         // preview a specific file
         if (commandLine.hasOption(DIFF_OPTION)){
-          return previewChange(change, commandLine.getValue("d"));
+          return previewChange(session.change, commandLine.getValue("d"));
         }
 
         HashMap<String,Object> preview = new HashMap<String,Object>();
         String previewOpt = "-" + PREVIEW_OPTION;
+        String allOpt = "-" + ALL_OPTION;
+        String sessionOpt = "-" + SESSION_OPTION;
         String[] args = commandLine.getArgs();
         StringBuffer apply = new StringBuffer();
-        for (String arg : args){
-          if (arg.equals(previewOpt)){
+        for (int ii = 0; ii < args.length; ii++){
+          String arg = args[ii];
+          if (arg.equals(previewOpt) || arg.equals(allOpt)){
+            continue;
+          }
+          if (arg.equals(sessionOpt)){
+            ii++;
             continue;
           }
           if (apply.length() > 0){
@@ -117,37 +154,22 @@ public abstract class AbstractRefactorCommand
         preview.put("apply", apply.toString()
             .replaceFirst("-" + Options.EDITOR_OPTION + "\\s\"\\w+\" ", "")
             .replaceFirst("-" + Options.PRETTY_OPTION + ' ', ""));
-        preview.put("changes", previewChanges(change));
+        ArrayList<HashMap<String,String>> changes =
+          previewChanges(session.change);
+        // include the preview of every file so the client doesn't have to
+        // request them one at a time.
+        if (commandLine.hasOption(ALL_OPTION)){
+          previewContents(session.change, changes);
+        }
+        preview.put("changes", changes);
+        // supplied via the session option, the diff and apply commands reuse
+        // the change computed here.
+        preview.put("session", session.token);
         return preview;
       }
 
-      IWorkspace workspace = ResourcesPlugin.getWorkspace();
-      ResourceChangeListener rcl = new ResourceChangeListener();
-      workspace.addResourceChangeListener(rcl);
-      try{
-        PerformChangeOperation changeOperation = new PerformChangeOperation(change);
-        // passing in refactor.name to the change op doesn't seem to do the
-        // trick, so lets force our name on the change since the undo manager
-        // will use the change's name if label is null (which it shouldn't be,
-        // but is, hence this hack).
-        if (change instanceof CompositeChange){
-          try{
-            Field fName = CompositeChange.class.getDeclaredField("fName");
-            fName.setAccessible(true);
-            fName.set(change, refactor.name);
-          }catch(NoSuchFieldException nsfe){
-            // change doesn't have the expected fName field.
-          }
-        }
-
-        changeOperation.setUndoManager(
-            RefactoringCore.getUndoManager(), change.getName());
-
-        changeOperation.run(new SubProgressMonitor(monitor, 4));
-        return rcl.getChangedFiles();
-      }finally{
-        workspace.removeResourceChangeListener(rcl);
-      }
+      sessions.remove(session);
+      return perform(session.refactor, session.change, monitor);
     }catch(RefactorException re){
       HashMap<String,List<String>> result = new HashMap<String,List<String>>();
       List<String> errors = new ArrayList<String>();
@@ -183,6 +205,78 @@ public abstract class AbstractRefactorCommand
   public abstract Refactor createRefactoring(CommandLine commandLine)
     throws Exception;
 
+  /**
+   * Builds the key identifying the refactoring requested by the supplied
+   * command line: the command name and its args minus those which only
+   * control how the result is presented (preview, diff, session, etc).
+   *
+   * @param commandLine The command line.
+   * @return The key.
+   */
+  private String getSessionKey(CommandLine commandLine)
+  {
+    String previewOpt = "-" + PREVIEW_OPTION;
+    String allOpt = "-" + ALL_OPTION;
+    String diffOpt = "-" + DIFF_OPTION;
+    String sessionOpt = "-" + SESSION_OPTION;
+    String editorOpt = "-" + Options.EDITOR_OPTION;
+    String prettyOpt = "-" + Options.PRETTY_OPTION;
+
+    StringBuffer key = new StringBuffer(getClass().getName());
+    String[] args = commandLine.getArgs();
+    for (int ii = 0; ii < args.length; ii++){
+      String arg = args[ii];
+      if (arg.equals(previewOpt) ||
+          arg.equals(allOpt) ||
+          arg.equals(prettyOpt))
+      {
+        continue;
+      }
+      if (arg.equals(diffOpt) ||
+          arg.equals(sessionOpt) ||
+          arg.equals(editorOpt))
+      {
+        ii++;
+        continue;
+      }
+      key.append('\0').append(arg);
+    }
+    return key.toString();
+  }
+
+  private Object perform(
+      Refactor refactor, Change change, IProgressMonitor monitor)
+    throws Exception
+  {
+    IWorkspace workspace = ResourcesPlugin.getWorkspace();
+    ResourceChangeListener rcl = new ResourceChangeListener();
+    workspace.addResourceChangeListener(rcl);
+    try{
+      PerformChangeOperation changeOperation = new PerformChangeOperation(change);
+      // passing in refactor.name to the change op doesn't seem to do the
+      // trick, so lets force our name on the change since the undo manager
+      // will use the change's name if label is null (which it shouldn't be,
+      // but is, hence this hack).
+      if (change instanceof CompositeChange){
+        try{
+          Field fName = CompositeChange.class.getDeclaredField("fName");
+          fName.setAccessible(true);
+          fName.set(change, refactor.name);
+        }catch(NoSuchFieldException nsfe){
+          // change doesn't have the expected fName field.
+        }
+      }
+
+      changeOperation.setUndoManager(
+          RefactoringCore.getUndoManager(), change.getName());
+
+      changeOperation.run(new SubProgressMonitor(monitor, 4));
+      return rcl.getChangedFiles();
+    }finally{
+      workspace.removeResourceChangeListener(rcl);
+    }
+  }
+
   private ArrayList<HashMap<String,String>> previewChanges(Change change)
     throws Exception
   {
@@ -209,6 +303,37 @@ public abstract class AbstractRefactorCommand
     return results;
   }
 
+  private void previewContents(
+      Change change, List<HashMap<String,String>> changes)
+    throws Exception
+  {
+    ArrayList<TextFileChange> textChanges = new ArrayList<TextFileChange>();
+    collectTextChanges(change, textChanges);
+
+    // previews go through the shared text file buffers (and jdt working
+    // copies for java changes), so they are computed on this thread. Text
+    // changes are collected in the same order previewChanges lists them.
+    int index = 0;
+    for (HashMap<String,String> result : changes){
+      if ("diff".equals(result.get("type"))){
+        TextFileChange text = textChanges.get(index++);
+        result.put("preview",
+            text.getPreviewContent(new NullProgressMonitor()));
+      }
+    }
+  }
+
+  private void collectTextChanges(Change change, List<TextFileChange> results)
+  {
+    if (change instanceof CompositeChange){
+      for (Change c : ((CompositeChange)change).getChildren()){
+        collectTextChanges(c, results);
+      }
+    }else if (change instanceof TextFileChange){
+      results.add((TextFileChange)change);
+    }
+  }
+
   private String previewChange(Change change, String file)
     throws Exception
   {
@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.refactoring;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclim.logging.Logger;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+
+import org.eclipse.core.runtime.CoreException;
+
+import org.eclipse.ltk.core.refactoring.Change;
+
+/**
+ * Store of the refactorings computed for a preview, so that the per file
+ * diffs and the final apply of that preview can reuse the already computed
+ * {@link Change} instead of running the refactoring's condition checks and
+ * reference searches again.
+ * <p/>
+ * Every session records the workspace modification stamp at the time its
+ * refactoring was computed. The stamp is advanced by any change to a non
+ * derived file in the workspace, at which point existing sessions are stale
+ * and are recomputed by the caller. Sessions also record a key identifying
+ * the command and arguments that computed them, so that a token can't be
+ * used to apply its change from a different command or with different
+ * arguments. The least recently used sessions are
+ * discarded once more than {@link #MAX_SESSIONS} are held.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class RefactorSessions
+  implements IResourceChangeListener
+{
+  private static final Logger logger = Logger.getLogger(RefactorSessions.class);
+
+  private static final int MAX_SESSIONS = 10;
+
+  private static RefactorSessions instance = new RefactorSessions();
+
+  private AtomicLong stamp = new AtomicLong();
+  private AtomicLong tokens = new AtomicLong(System.currentTimeMillis());
+
+  @SuppressWarnings("serial")
+  private Map<String,Session> sessions =
+    new LinkedHashMap<String,Session>(MAX_SESSIONS, .75f, true){
+      protected boolean removeEldestEntry(Map.Entry<String,Session> eldest){
+        if (size() > MAX_SESSIONS){
+          eldest.getValue().change.dispose();
+          return true;
+        }
+        return false;
+      }
+    };
+
+  private RefactorSessions()
+  {
+  }
+
+  /**
+   * Gets the shared session store.
+   *
+   * @return The RefactorSessions.
+   */
+  public static RefactorSessions getInstance()
+  {
+    return instance;
+  }
+
+  /**
+   * Gets the current workspace modification stamp, which should be obtained
+   * before computing a refactoring that will be stored via
+   * {@link #add(Refactor,Change,String,long)}.
+   *
+   * @return The modification stamp.
+   */
+  public long getStamp()
+  {
+    return stamp.get();
+  }
+
+  /**
+   * Stores a new session for the supplied refactoring.
+   *
+   * @param refactor The refactoring.
+   * @param change The change created by the refactoring.
+   * @param key Key identifying the command and arguments which computed the
+   * refactoring.
+   * @param stamp The workspace modification stamp obtained before the
+   * refactoring was computed.
+   * @return The new session.
+   */
+  public Session add(Refactor refactor, Change change, String key, long stamp)
+  {
+    Session session = new Session(
+        Long.toString(tokens.incrementAndGet(), 36),
+        refactor, change, key, stamp);
+    synchronized(sessions){
+      sessions.put(session.token, session);
+    }
+    return session;
+  }
+
+  /**
+   * Gets the session with the supplied token, provided it was computed with
+   * the supplied key and the workspace has not been modified since.
+   *
+   * @param token The session token.
+   * @param key Key identifying the command and arguments requesting the
+   * session.
+   * @return The session or null if not found, computed for another key, or
+   * stale.
+   */
+  public Session get(String token, String key)
+  {
+    synchronized(sessions){
+      Session session = sessions.get(token);
+      if (session != null && !session.key.equals(key)){
+        logger.debug("refactoring session {} computed for other args", token);
+        return null;
+      }
+      if (session != null && session.stamp != stamp.get()){
+        logger.debug("discarding stale refactoring session: {}", token);
+        sessions.remove(token);
+        session.change.dispose();
+        session = null;
+      }
+      return session;
+    }
+  }
+
+  /**
+   * Removes the supplied session, once its change has been performed.
+   *
+   * @param session The session.
+   */
+  public void remove(Session session)
+  {
+    synchronized(sessions){
+      sessions.remove(session.token);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * @see IResourceChangeListener#resourceChanged(IResourceChangeEvent)
+   */
+  @Override
+  public void resourceChanged(IResourceChangeEvent event)
+  {
+    IResourceDelta delta = event.getDelta();
+    if (delta == null){
+      return;
+    }
+
+    synchronized(sessions){
+      if (sessions.isEmpty()){
+        return;
+      }
+    }
+
+    try{
+      delta.accept(new IResourceDeltaVisitor(){
+        public boolean visit(IResourceDelta delta)
+        {
+          IResource resource = delta.getResource();
+          if (resource.isDerived() || resource.isTeamPrivateMember()){
+            return false;
+          }
+          if (resource.getType() == IResource.FILE){
+            if (delta.getKind() != IResourceDelta.CHANGED ||
+                (delta.getFlags() & IResourceDelta.CONTENT) != 0)
+            {
+              stamp.incrementAndGet();
+            }
+            return false;
+          }
+          return true;
+        }
+      });
+    }catch(CoreException ce){
+      logger.error("Error processing resource delta.", ce);
+      stamp.incrementAndGet();
+    }
+  }
+
+  /**
+   * A computed refactoring and its change.
+   */
+  public static class Session
+  {
+    public final String token;
+    public final Refactor refactor;
+    public final Change change;
+    private final String key;
+    private final long stamp;
+
+    private Session(
+        String token, Refactor refactor, Change change, String key, long stamp)
+    {
+      this.token = token;
+      this.refactor = refactor;
+      this.change = change;
+      this.key = key;
+      this.stamp = stamp;
+    }
+  }
+}
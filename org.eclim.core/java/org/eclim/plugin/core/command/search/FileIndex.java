@@ -0,0 +1,446 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.search;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclim.logging.Logger;
+
+import org.eclim.util.file.FileUtils;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * In memory index of the file names in each project, used by locate_file so
+ * that queries don't have to walk the resource tree.
+ * <p/>
+ * A project's index is built by a single resource walk on first request and
+ * then kept current from the resource deltas of POST_CHANGE events. Each
+ * entry holds its interned parent path, its name, and a bit mask of the
+ * characters in the name, which allows queries to skip entries that cannot
+ * possibly match before running a regex against them (see
+ * {@link #requiredMask(String)}).
+ *
+ * @author Eric Van Dewoestine
+ */
+public class FileIndex
+  implements IResourceChangeListener
+{
+  private static final Logger logger = Logger.getLogger(FileIndex.class);
+
+  private static final Set<String> IGNORE_DIRS = new HashSet<String>(
+      Arrays.asList(new String[]{"CVS", ".bzr", ".git", ".hg", ".svn"}));
+
+  private static final Set<String> IGNORE_EXTS = new HashSet<String>(
+      Arrays.asList(new String[]{
+        "class", "gif", "jpeg", "jpg", "png", "pyc", "swp"}));
+
+  private static FileIndex instance = new FileIndex();
+
+  private ConcurrentHashMap<String,ProjectFiles> projects =
+    new ConcurrentHashMap<String,ProjectFiles>();
+
+  private FileIndex()
+  {
+  }
+
+  /**
+   * Gets the shared index instance.
+   *
+   * @return The FileIndex.
+   */
+  public static FileIndex getInstance()
+  {
+    return instance;
+  }
+
+  /**
+   * Gets the indexed files of the supplied project, indexing the project
+   * first if necessary.
+   *
+   * @param project The project.
+   * @return Live, unmodifiable view of the project's file entries.
+   */
+  public Collection<Entry> getFiles(IProject project)
+    throws CoreException
+  {
+    ProjectFiles files = projects.get(project.getName());
+    if (files == null){
+      files = new ProjectFiles();
+      ProjectFiles existing = projects.putIfAbsent(project.getName(), files);
+      if (existing != null){
+        files = existing;
+      }
+    }
+
+    if (!files.indexed){
+      synchronized(files){
+        if (!files.indexed){
+          files.indexed = true;
+          try{
+            final ProjectFiles index = files;
+            project.accept(new IResourceProxyVisitor(){
+              public boolean visit(IResourceProxy proxy)
+              {
+                switch (proxy.getType()){
+                  case IResource.FOLDER:
+                    return !IGNORE_DIRS.contains(proxy.getName());
+                  case IResource.FILE:
+                    if (!ignore(proxy.getName())){
+                      index.add(proxy.requestFullPath().toString());
+                    }
+                    return false;
+                  default:
+                    return true;
+                }
+              }
+            }, IResource.NONE);
+            logger.debug("indexed {} files for project: {}",
+                files.entries.size(), project.getName());
+          }catch(CoreException ce){
+            files.indexed = false;
+            files.entries.clear();
+            throw ce;
+          }
+        }
+      }
+    }
+    return Collections.unmodifiableSet(files.entries);
+  }
+
+  /**
+   * {@inheritDoc}
+   * @see IResourceChangeListener#resourceChanged(IResourceChangeEvent)
+   */
+  @Override
+  public void resourceChanged(IResourceChangeEvent event)
+  {
+    IResourceDelta delta = event.getDelta();
+    if (delta == null || projects.isEmpty()){
+      return;
+    }
+
+    try{
+      delta.accept(new IResourceDeltaVisitor(){
+        public boolean visit(IResourceDelta delta)
+        {
+          IResource resource = delta.getResource();
+          int kind = delta.getKind();
+          switch (resource.getType()){
+            case IResource.ROOT:
+              return true;
+            case IResource.PROJECT:
+              // projects removed, opened or closed are re-indexed on demand.
+              if (kind != IResourceDelta.CHANGED ||
+                  (delta.getFlags() & IResourceDelta.OPEN) != 0)
+              {
+                projects.remove(resource.getName());
+                return false;
+              }
+              ProjectFiles files = projects.get(resource.getName());
+              return files != null && files.indexed;
+            case IResource.FOLDER:
+              return !IGNORE_DIRS.contains(resource.getName());
+            case IResource.FILE:
+              if (!ignore(resource.getName())){
+                ProjectFiles index = projects.get(resource.getProject().getName());
+                String path = resource.getFullPath().toString();
+                if (index != null && kind == IResourceDelta.ADDED){
+                  index.add(path);
+                }else if (index != null && kind == IResourceDelta.REMOVED){
+                  index.remove(path);
+                }
+              }
+              return false;
+            default:
+              return false;
+          }
+        }
+      });
+    }catch(CoreException ce){
+      logger.error("Error updating file index.", ce);
+    }
+  }
+
+  /**
+   * Computes the bit mask of characters for the supplied value. Characters
+   * are case folded, so the mask of a name is a superset of the mask of any
+   * pattern, case sensitive or not, which can match it.
+   *
+   * @param value The value.
+   * @return The bit mask.
+   */
+  public static long mask(CharSequence value)
+  {
+    long mask = 0;
+    for (int ii = 0; ii < value.length(); ii++){
+      mask |= bit(value.charAt(ii));
+    }
+    return mask;
+  }
+
+  /**
+   * Computes the mask of the characters which any value matched by the
+   * supplied regex must contain. The analysis is conservative: when the
+   * pattern is too complex to analyze (alternation, groups, quoting) the
+   * mask contains only the literals that are certain to be required, possibly
+   * none.
+   *
+   * @param regex The regular expression.
+   * @return The bit mask.
+   */
+  public static long requiredMask(String regex)
+  {
+    if (regex.indexOf('|') != -1 || regex.indexOf("\\Q") != -1){
+      return 0;
+    }
+
+    long mask = 0;
+    int depth = 0;
+    int length = regex.length();
+    for (int ii = 0; ii < length; ii++){
+      char c = regex.charAt(ii);
+      int literal = -1;
+      if (c == '\\' && ii + 1 < length){
+        char next = regex.charAt(++ii);
+        // escaped letters and digits are classes (\d, \w), back references,
+        // or character codes (\x41, \u0041), none of which are literals.
+        if (Character.isLetterOrDigit(next)){
+          ii = skipEscape(regex, ii);
+        }else{
+          literal = next;
+        }
+      }else if (c == '{'){
+        // skip the quantifier's bounds
+        while (ii < length && regex.charAt(ii) != '}'){
+          ii++;
+        }
+      }else if (c == '['){
+        // skip the character class
+        ii++;
+        if (ii < length && regex.charAt(ii) == '^'){
+          ii++;
+        }
+        if (ii < length && regex.charAt(ii) == ']'){
+          ii++;
+        }
+        while (ii < length && regex.charAt(ii) != ']'){
+          if (regex.charAt(ii) == '\\'){
+            ii++;
+          }
+          ii++;
+        }
+      }else if (c == '('){
+        depth++;
+      }else if (c == ')'){
+        depth--;
+      }else if (".^$*+?{}".indexOf(c) == -1){
+        literal = c;
+      }
+
+      if (literal != -1 && depth == 0){
+        char next = ii + 1 < length ? regex.charAt(ii + 1) : 0;
+        if (next != '*' && next != '?' && next != '{'){
+          mask |= bit((char)literal);
+        }
+      }
+    }
+    return mask;
+  }
+
+  /**
+   * Skips past the remainder of an escape sequence whose first character
+   * (following the backslash) is at the supplied index.
+   *
+   * @param regex The regular expression.
+   * @param index The index of the escaped character.
+   * @return The index of the last character of the escape sequence.
+   */
+  private static int skipEscape(String regex, int index)
+  {
+    int length = regex.length();
+    char c = regex.charAt(index);
+    int count = 0;
+    switch (c){
+      case 'p':
+      case 'P':
+      case 'x':
+        // \p{Lu}, \x{41}
+        if (index + 1 < length && regex.charAt(index + 1) == '{'){
+          int end = regex.indexOf('}', index + 1);
+          return end != -1 ? end : length - 1;
+        }
+        // \pL, \x41
+        count = c == 'x' ? 2 : 1;
+        break;
+      case 'u':
+        count = 4;
+        break;
+      case 'c':
+        count = 1;
+        break;
+      case 'k':
+        // \k<name>
+        int end = regex.indexOf('>', index + 1);
+        return end != -1 ? end : length - 1;
+      default:
+        // octal (\0123) and back references (\12)
+        if (c >= '0' && c <= '9'){
+          while (index + 1 < length &&
+              Character.isDigit(regex.charAt(index + 1)))
+          {
+            index++;
+          }
+        }
+    }
+    return Math.min(index + count, length - 1);
+  }
+
+  private static long bit(char c)
+  {
+    c = Character.toLowerCase(c);
+    if (c >= 'a' && c <= 'z'){
+      return 1L << (c - 'a');
+    }
+    if (c >= '0' && c <= '9'){
+      return 1L << (26 + c - '0');
+    }
+    switch (c){
+      case '.':
+        return 1L << 36;
+      case '_':
+        return 1L << 37;
+      case '-':
+        return 1L << 38;
+      default:
+        return 1L << (39 + (c % 25));
+    }
+  }
+
+  private static boolean ignore(String name)
+  {
+    return IGNORE_EXTS.contains(FileUtils.getExtension(name).toLowerCase());
+  }
+
+  /**
+   * The indexed files of a single project.
+   */
+  private static class ProjectFiles
+  {
+    public volatile boolean indexed;
+    public Set<Entry> entries =
+      Collections.newSetFromMap(new ConcurrentHashMap<Entry,Boolean>());
+    private ConcurrentHashMap<String,String> parents =
+      new ConcurrentHashMap<String,String>();
+
+    public void add(String path)
+    {
+      int index = path.lastIndexOf('/');
+      String parent = path.substring(0, index);
+      String existing = parents.putIfAbsent(parent, parent);
+      entries.add(new Entry(
+            existing != null ? existing : parent, path.substring(index + 1)));
+    }
+
+    public void remove(String path)
+    {
+      int index = path.lastIndexOf('/');
+      entries.remove(
+          new Entry(path.substring(0, index), path.substring(index + 1)));
+    }
+  }
+
+  /**
+   * A single indexed file.
+   */
+  public static class Entry
+  {
+    private String parent;
+    private String name;
+    private long mask;
+
+    private Entry(String parent, String name)
+    {
+      this.parent = parent;
+      this.name = name;
+      this.mask = mask(name);
+    }
+
+    /**
+     * Gets the file's name.
+     *
+     * @return The file name.
+     */
+    public String getName()
+    {
+      return name;
+    }
+
+    /**
+     * Gets the workspace relative path of the file (/project/path/to/file).
+     *
+     * @return The workspace path.
+     */
+    public String getPath()
+    {
+      return parent + '/' + name;
+    }
+
+    /**
+     * Determines if this entry's name contains all the characters of the
+     * supplied mask.
+     *
+     * @param required The mask of required characters.
+     * @return true if the name contains all the characters.
+     */
+    public boolean contains(long required)
+    {
+      return (mask & required) == required;
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+      if (!(other instanceof Entry)){
+        return false;
+      }
+      Entry entry = (Entry)other;
+      return name.equals(entry.name) && parent.equals(entry.parent);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return 31 * parent.hashCode() + name.hashCode();
+    }
+  }
+}
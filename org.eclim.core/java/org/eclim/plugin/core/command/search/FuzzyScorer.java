@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.search;
+
+/**
+ * Fuzzy scorer, modeled after fzf's, which scores how well a query matches a
+ * file path as a subsequence.
+ * <p/>
+ * Matches are rewarded for falling on word boundaries (after a path separator,
+ * '_', '-', '.', etc.), camel humps, and runs of consecutive characters, and
+ * penalized for gaps. Matches within the file name are preferred over matches
+ * in the leading directories, and shorter paths are slightly preferred over
+ * longer ones. The query is matched case insensitively unless it contains an
+ * upper case character.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class FuzzyScorer
+{
+  /**
+   * Score returned when the query is not a subsequence of the text.
+   */
+  public static final int NO_MATCH = Integer.MIN_VALUE;
+
+  private static final int SCORE_MATCH = 16;
+  private static final int BONUS_SEPARATOR = 10;
+  private static final int BONUS_BOUNDARY = 8;
+  private static final int BONUS_CAMEL = 7;
+  private static final int BONUS_CONSECUTIVE = 4;
+  private static final int BONUS_FILE_NAME = 24;
+  private static final int PENALTY_GAP_START = 3;
+  private static final int PENALTY_GAP_EXTENSION = 1;
+  private static final int PENALTY_LENGTH_DIVISOR = 16;
+
+  private char[] query;
+  private boolean ignoreCase;
+
+  /**
+   * Constructs a new instance.
+   *
+   * @param query The query to score text against.
+   */
+  public FuzzyScorer(String query)
+  {
+    this.ignoreCase = query.equals(query.toLowerCase());
+    this.query = query.toCharArray();
+  }
+
+  /**
+   * Scores the supplied text (a file path) against this scorer's query.
+   *
+   * @param text The text.
+   * @return The score (higher is better), or NO_MATCH if the query is not a
+   * subsequence of the text.
+   */
+  public int score(String text)
+  {
+    int length = text.length();
+    int qlength = query.length;
+    if (qlength == 0){
+      return -(length / PENALTY_LENGTH_DIVISOR);
+    }
+
+    // find the first position at which the whole query has been matched...
+    int qi = 0;
+    int end = -1;
+    for (int ii = 0; ii < length; ii++){
+      if (matches(text.charAt(ii), query[qi]) && ++qi == qlength){
+        end = ii;
+        break;
+      }
+    }
+    if (end == -1){
+      return NO_MATCH;
+    }
+
+    // ...then scan backwards from there to find the shortest window.
+    qi = qlength - 1;
+    int start = end;
+    for (int ii = end; ii >= 0; ii--){
+      if (matches(text.charAt(ii), query[qi]) && --qi < 0){
+        start = ii;
+        break;
+      }
+    }
+
+    int score = 0;
+    int consecutive = 0;
+    boolean gap = false;
+    qi = 0;
+    char prev = start > 0 ? text.charAt(start - 1) : '/';
+    for (int ii = start; ii <= end; ii++){
+      char c = text.charAt(ii);
+      if (qi < qlength && matches(c, query[qi])){
+        int bonus = bonus(prev, c);
+        if (consecutive > 0 && bonus < BONUS_CONSECUTIVE){
+          bonus = BONUS_CONSECUTIVE;
+        }
+        if (qi == 0){
+          bonus *= 2;
+        }
+        score += SCORE_MATCH + bonus;
+        consecutive++;
+        gap = false;
+        qi++;
+      }else{
+        score -= gap ? PENALTY_GAP_EXTENSION : PENALTY_GAP_START;
+        consecutive = 0;
+        gap = true;
+      }
+      prev = c;
+    }
+
+    if (start > text.lastIndexOf('/')){
+      score += BONUS_FILE_NAME;
+    }
+    return score - (length / PENALTY_LENGTH_DIVISOR);
+  }
+
+  private boolean matches(char c, char q)
+  {
+    return c == q || (ignoreCase && Character.toLowerCase(c) == q);
+  }
+
+  private static int bonus(char prev, char c)
+  {
+    if (prev == '/' || prev == '\\'){
+      return BONUS_SEPARATOR;
+    }
+    if (!Character.isLetterOrDigit(prev) && Character.isLetterOrDigit(c)){
+      return BONUS_BOUNDARY;
+    }
+    if (Character.isLowerCase(prev) && Character.isUpperCase(c)){
+      return BONUS_CAMEL;
+    }
+    if (Character.isLetter(prev) && Character.isDigit(c)){
+      return BONUS_CAMEL;
+    }
+    return 0;
+  }
+}
@@ -16,15 +16,22 @@
  */
 package org.eclim.plugin.core.command.search;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileInputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.charset.Charset;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.PriorityQueue;
+
+import java.util.concurrent.Callable;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -36,6 +43,7 @@ import org.eclim.command.Options;
 
 import org.eclim.plugin.core.command.AbstractCommand;
 
+import org.eclim.plugin.core.util.ParallelUtils;
 import org.eclim.plugin.core.util.ProjectUtils;
 
 import org.eclim.util.IOUtils;
@@ -43,17 +51,11 @@ import org.eclim.util.IOUtils;
 import org.eclim.util.file.FileUtils;
 
 import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.IResourceProxy;
-import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.ResourcesPlugin;
 
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
-
-import com.wcohen.ss.Levenstein;
-
-import com.wcohen.ss.api.StringDistance;
+import org.eclipse.core.runtime.Path;
 
 /**
  * Given a file pattern, finds all files that match that pattern.
@@ -76,6 +78,9 @@ public class LocateFileCommand
   public static final String SCOPE_WORKSPACE = "workspace";
   public static final String SCOPE_LIST = "list";
 
+  private static final int MAX_RESULTS = 100;
+  private static final int MIN_CHUNK_SIZE = 10000;
+
   @Override
   public Object execute(CommandLine commandLine)
     throws Exception
@@ -84,17 +89,14 @@ public class LocateFileCommand
     String scope = commandLine.getValue(Options.SCOPE_OPTION);
     String projectName = commandLine.getValue(Options.NAME_OPTION);
 
-    List<Result> results = null;
+    // every file matching the pattern is ranked, keeping only the best.
+    Ranker ranker = new Ranker(pattern, projectName, MAX_RESULTS);
     if (SCOPE_LIST.equals(scope)){
-      results = executeLocateFromFileList(commandLine, pattern, scope);
+      executeLocateFromFileList(commandLine, pattern, ranker);
     }else{
-      results = executeLocateFromEclipse(commandLine, pattern, scope);
+      executeLocateFromEclipse(commandLine, pattern, scope, ranker);
     }
-
-    FilePathComparator comparator =
-      new FilePathComparator(pattern, projectName);
-    Collections.sort(results, comparator);
-    return results;
+    return ranker.getResults();
   }
 
   @Override
@@ -103,34 +105,54 @@ public class LocateFileCommand
     // no-op
   }
 
-  private List<Result> executeLocateFromFileList(
-      CommandLine commandLine, String pattern, String scope)
+  private void executeLocateFromFileList(
+      CommandLine commandLine, String pattern, Ranker ranker)
     throws Exception
   {
-    ArrayList<Result> results = new ArrayList<Result>();
     String fileName = commandLine.getValue(Options.FILE_OPTION);
-    BufferedReader reader = null;
-    try{
-      reader = new BufferedReader(new FileReader(fileName));
-      int flags = 0;
-      if (commandLine.hasOption(Options.CASE_INSENSITIVE_OPTION)){
-        flags = Pattern.CASE_INSENSITIVE;
-      }
-      Matcher matcher = Pattern.compile(pattern, flags).matcher("");
-      String line = null;
-      while ((line = reader.readLine()) != null){
-        if (matcher.reset(line).find()){
-          results.add(new Result(FileUtils.getBaseName(line), line, null, null));
+    final String[] lines = FileList.read(fileName);
+
+    int flags = 0;
+    if (commandLine.hasOption(Options.CASE_INSENSITIVE_OPTION)){
+      flags = Pattern.CASE_INSENSITIVE;
+    }
+    final Pattern regex = Pattern.compile(pattern, flags);
+
+    // match chunks of the list in parallel, each with its own matcher and
+    // ranker, then merge the top results of each.
+    int chunk = Math.max(
+        lines.length / ParallelUtils.getThreadCount() + 1, MIN_CHUNK_SIZE);
+    ArrayList<Callable<Ranker>> matchers = new ArrayList<Callable<Ranker>>();
+    for (int ii = 0; ii < lines.length; ii += chunk){
+      final int start = ii;
+      final int end = Math.min(ii + chunk, lines.length);
+      final Ranker chunkRanker = ranker.fork();
+      matchers.add(new Callable<Ranker>(){
+        public Ranker call()
+        {
+          Matcher matcher = regex.matcher("");
+          for (int jj = start; jj < end; jj++){
+            String line = lines[jj];
+            if (matcher.reset(line).find()){
+              int score = chunkRanker.score(line, null);
+              if (chunkRanker.accepts(score, line)){
+                chunkRanker.add(score,
+                    new Result(FileUtils.getBaseName(line), line, null, null));
+              }
+            }
+          }
+          return chunkRanker;
         }
-      }
-    }finally{
-      IOUtils.closeQuietly(reader);
+      });
+    }
+
+    for (Ranker result : ParallelUtils.invokeAll(matchers)){
+      ranker.merge(result);
     }
-    return results;
   }
 
-  private List<Result> executeLocateFromEclipse(
-      CommandLine commandLine, String pattern, String scope)
+  private void executeLocateFromEclipse(
+      CommandLine commandLine, String pattern, String scope, Ranker ranker)
     throws Exception
   {
     ArrayList<IProject> projects = new ArrayList<IProject>();
@@ -158,12 +180,13 @@ public class LocateFileCommand
     }
 
     FileMatcher matcher = new FileMatcher(
-        pattern, commandLine.hasOption(Options.CASE_INSENSITIVE_OPTION));
-    for (IProject resource : projects){
-      resource.accept(matcher, 0);
+        pattern, commandLine.hasOption(Options.CASE_INSENSITIVE_OPTION), ranker);
+    FileIndex index = FileIndex.getInstance();
+    for (IProject project : projects){
+      for (FileIndex.Entry entry : index.getFiles(project)){
+        matcher.accept(entry);
+      }
     }
-
-    return matcher.getResults();
   }
 
   public static class Result
@@ -195,45 +218,26 @@ public class LocateFileCommand
   }
 
   private static class FileMatcher
-    implements IResourceProxyVisitor
   {
     private static final Pattern FIND_BASE = Pattern.compile("^.*/([^\\]].*)");
 
-    private static final ArrayList<String> IGNORE_DIRS =
-      new ArrayList<String>();
-    static {
-      IGNORE_DIRS.add("CVS");
-      IGNORE_DIRS.add(".bzr");
-      IGNORE_DIRS.add(".git");
-      IGNORE_DIRS.add(".hg");
-      IGNORE_DIRS.add(".svn");
-    }
-
-    private static final ArrayList<String> IGNORE_EXTS =
-      new ArrayList<String>();
-    static {
-      IGNORE_EXTS.add("class");
-      IGNORE_EXTS.add("gif");
-      IGNORE_EXTS.add("jpeg");
-      IGNORE_EXTS.add("jpg");
-      IGNORE_EXTS.add("png");
-      IGNORE_EXTS.add("pyc");
-      IGNORE_EXTS.add("swp");
-    }
-
+    private IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
     private Matcher matcher;
     private boolean includesPath;
     private Matcher baseMatcher;
-    private ArrayList<Result> results = new ArrayList<Result>();
-    private ArrayList<String> seen = new ArrayList<String>();
+    private long required;
+    private Ranker ranker;
 
     /**
      * Constructs a new instance.
      *
      * @param pattern The pattern for this instance.
+     * @param ignoreCase true to match case insensitively.
+     * @param ranker The ranker to supply matching files to.
      */
-    public FileMatcher (String pattern, boolean ignoreCase)
+    public FileMatcher (String pattern, boolean ignoreCase, Ranker ranker)
     {
+      this.ranker = ranker;
       int flags = 0;
       if (ignoreCase){
         flags = Pattern.CASE_INSENSITIVE;
@@ -245,123 +249,340 @@ public class LocateFileCommand
         String base = baseMatcher.group(1);
         this.baseMatcher = Pattern.compile(base).matcher("");
         this.includesPath = true;
+        this.required = FileIndex.requiredMask(base);
+      }else{
+        this.required = FileIndex.requiredMask(pattern);
       }
     }
 
-    @Override
-    public boolean visit(IResourceProxy proxy)
-      throws CoreException
+    /**
+     * Tests the supplied index entry against the pattern, supplying it to the
+     * ranker if it matches.
+     *
+     * @param entry The file index entry.
+     */
+    public void accept(FileIndex.Entry entry)
     {
-      if (results.size() >= 100){
-        return false;
-      }
-
-      int type = proxy.getType();
-      String name = proxy.getName();
-
-      if (type == IResource.PROJECT){
-        return true;
-      }else if (type == IResource.FOLDER && IGNORE_DIRS.contains(name)){
-        return false;
-      }else if (type == IResource.FOLDER){
-        return true;
-      }else if (type == IResource.FILE){
-        String ext = FileUtils.getExtension(name).toLowerCase();
-        if (IGNORE_EXTS.contains(ext)){
-          return false;
-        }
+      // quick check that the name contains all the required chars.
+      if (!entry.contains(required)){
+        return;
       }
 
-      IResource resource = null;
+      String name = entry.getName();
       if (includesPath){
         if (!baseMatcher.reset(name).matches()){
-          return true;
+          return;
         }
-        resource = proxy.requestResource();
-        name = resource.getFullPath().toOSString().replace('\\', '/');
+        name = entry.getPath();
       }
 
       if (matcher.reset(name).matches()){
-        if (resource == null){
-          resource = proxy.requestResource();
+        String rel = entry.getPath();
+        String project = rel.substring(1, rel.indexOf('/', 1));
+        int score = ranker.score(rel, project);
+        if (!ranker.accepts(score, rel)){
+          return;
         }
-        IPath raw = resource.getLocation();
+
+        IPath raw = root.getFile(new Path(rel)).getLocation();
         if (raw != null){
-          String rel = resource.getFullPath().toOSString().replace('\\', '/');
           String path = raw.toOSString().replace('\\', '/');
-          Result entry = new Result(
-              FileUtils.getBaseName(rel),
-              path, resource.getProject().getName(), rel);
-          if (!seen.contains(path)){
-            results.add(entry);
-            seen.add(path);
-          }
+          ranker.add(score,
+              new Result(FileUtils.getBaseName(rel), path, project, rel));
         }
       }
-
-      return true;
-    }
-
-    public List<Result> getResults()
-    {
-      return results;
     }
   }
 
-  private static class FilePathComparator
-    implements Comparator<Result>
+  /**
+   * Ranks files using a {@link FuzzyScorer}, retaining only the top k results
+   * in a bounded min-heap. Only the best ranked entry of a file reachable more
+   * than once (via several projects or links) is retained.
+   */
+  private static class Ranker
   {
-    private StringDistance distance;
-    private String pattern;
+    private FuzzyScorer scorer;
     private String projectName;
-    private Map<String, Double> scores = new HashMap<String, Double>();
+    private int max;
+    private PriorityQueue<Ranked> heap;
+    private HashMap<String,Ranked> byPath;
 
     /**
      * Constructs a new instance.
      *
-     * @param pattern The pattern for this instance.
+     * @param pattern The regex pattern supplied by the user.
      * @param projectName The possibly null current project name.
+     * @param max The max number of results to retain.
      */
-    public FilePathComparator(String pattern, String projectName)
+    public Ranker(String pattern, String projectName, int max)
+    {
+      this(new FuzzyScorer(toQuery(pattern)), projectName, max);
+    }
+
+    private Ranker(FuzzyScorer scorer, String projectName, int max)
     {
-      this.distance = new Levenstein();
-      this.pattern = pattern;
-      this.pattern = this.pattern.replaceAll("\\.\\*\\??", "");
+      this.scorer = scorer;
       this.projectName = projectName;
+      this.max = max;
+      this.heap = new PriorityQueue<Ranked>(max + 1);
+      this.byPath = new HashMap<String,Ranked>(max + 1);
     }
 
-    @Override
-    public int compare(Result o1, Result o2)
+    /**
+     * Scores the supplied path.
+     *
+     * @param path The path to score.
+     * @param project The name of the project the file is in, if any.
+     * @return The score.
+     */
+    public int score(String path, String project)
     {
-      double score1 = score(o1);
-      double score2 = score(o2);
+      int score = scorer.score(path);
+      // the regex matched, even if the derived query doesn't.
+      if (score == FuzzyScorer.NO_MATCH){
+        score = -path.length();
+      }
 
-      return (int)Math.round(score1 - score2);
+      // weight files in the current project more favorably
+      if (projectName != null && projectName.equals(project)){
+        score += Math.abs(score) / 10 + 1;
+      }
+      return score;
     }
 
-    public double score(Result result)
+    /**
+     * Determines if a result with the supplied score and rank path (the
+     * project relative path if any, otherwise the absolute path) would be
+     * retained.
+     *
+     * @param score The score.
+     * @param rankPath The path used to break ties between equal scores.
+     * @return true if it would be retained, false otherwise.
+     */
+    public boolean accepts(int score, String rankPath)
     {
-      String path = result.projectPath != null ? result.projectPath : result.path;
-      if (this.scores.containsKey(path)){
-        return this.scores.get(path);
+      if (heap.size() < max){
+        return true;
       }
-      double score = 0 - this.distance.score(this.pattern, path);
+      Ranked lowest = heap.peek();
+      return Ranked.compare(
+          score, rankPath, lowest.score, lowest.getRankPath()) > 0;
+    }
 
-      // weight files in the current project more favorably
-      if (projectName != null && result.project != null){
-        if (result.project.equals(projectName)){
-          score -= score * .1;
+    public void add(int score, Result result)
+    {
+      add(new Ranked(score, result));
+    }
+
+    private void add(Ranked ranked)
+    {
+      Ranked existing = byPath.get(ranked.result.path);
+      if (existing != null){
+        if (ranked.compareTo(existing) <= 0){
+          return;
         }
+        heap.remove(existing);
       }
 
-      this.scores.put(path, score);
-      return score;
+      heap.add(ranked);
+      byPath.put(ranked.result.path, ranked);
+      if (heap.size() > max){
+        byPath.remove(heap.poll().result.path);
+      }
+    }
+
+    /**
+     * Creates a new, empty, ranker with the same configuration as this one,
+     * for use by another thread.
+     *
+     * @return The new Ranker.
+     */
+    public Ranker fork()
+    {
+      return new Ranker(scorer, projectName, max);
+    }
+
+    /**
+     * Merges the results retained by another ranker into this one.
+     *
+     * @param other The other ranker.
+     */
+    public void merge(Ranker other)
+    {
+      for (Ranked ranked : other.heap){
+        if (accepts(ranked.score, ranked.getRankPath())){
+          add(ranked);
+        }
+      }
+    }
+
+    /**
+     * Gets the retained results, best first.
+     *
+     * @return List of results.
+     */
+    public List<Result> getResults()
+    {
+      ArrayList<Ranked> ranked = new ArrayList<Ranked>(heap);
+      Collections.sort(ranked, Collections.reverseOrder());
+
+      ArrayList<Result> results = new ArrayList<Result>(ranked.size());
+      for (Ranked r : ranked){
+        results.add(r.result);
+      }
+      return results;
+    }
+
+    /**
+     * Converts the regex pattern sent by the client into a plain query
+     * string by removing wildcards and unescaping literals.
+     */
+    private static String toQuery(String pattern)
+    {
+      pattern = pattern
+        .replace("[^/]*?", "")
+        .replace("[^/]*", "")
+        .replaceAll("\\.[*+]\\??", "");
+      StringBuilder query = new StringBuilder();
+      for (int ii = 0; ii < pattern.length(); ii++){
+        char c = pattern.charAt(ii);
+        if (c == '\\' && ii + 1 < pattern.length()){
+          query.append(pattern.charAt(++ii));
+        }else if ("^$()[]{}*+?|".indexOf(c) == -1){
+          query.append(c);
+        }
+      }
+      return query.toString();
+    }
+  }
+
+  private static class Ranked
+    implements Comparable<Ranked>
+  {
+    public final int score;
+    public final Result result;
+
+    public Ranked(int score, Result result)
+    {
+      this.score = score;
+      this.result = result;
+    }
+
+    /**
+     * Gets the path used to break ties between equal scores: the project
+     * relative path if any, otherwise the absolute path.
+     *
+     * @return The path.
+     */
+    public String getRankPath()
+    {
+      return result.projectPath != null ? result.projectPath : result.path;
     }
 
     @Override
-    public boolean equals(Object obj)
+    public int compareTo(Ranked other)
+    {
+      return compare(score, getRankPath(), other.score, other.getRankPath());
+    }
+
+    public static int compare(
+        int score, String path, int otherScore, String otherPath)
+    {
+      if (score != otherScore){
+        return score < otherScore ? -1 : 1;
+      }
+      // on a tie prefer the shorter, then alphabetically first, path.
+      if (path.length() != otherPath.length()){
+        return path.length() > otherPath.length() ? -1 : 1;
+      }
+      return otherPath.compareTo(path);
+    }
+  }
+
+  /**
+   * Reads client supplied file lists, reading the file in one pass and
+   * splitting it into lines in parallel.
+   * <p/>
+   * The file isn't memory mapped since a mapping keeps the file locked on
+   * windows until it is garbage collected, preventing the client from
+   * deleting it, and the lines aren't cached since the client writes the list
+   * to a new temp file on every request.
+   */
+  private static class FileList
+  {
+    private static final int MIN_CHUNK_BYTES = 1024 * 1024;
+
+    /**
+     * Gets the lines of the supplied file.
+     *
+     * @param fileName The file name.
+     * @return Array of lines.
+     */
+    public static String[] read(String fileName)
+      throws Exception
     {
-      return super.equals(obj);
+      FileInputStream in = null;
+      try{
+        in = new FileInputStream(fileName);
+        FileChannel channel = in.getChannel();
+        final ByteBuffer buffer = ByteBuffer.allocate((int)channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer) != -1){
+          // keep reading until the buffer is full.
+        }
+        buffer.flip();
+        int size = buffer.limit();
+
+        // split the file into chunks ending on a newline.
+        int chunk = Math.max(
+            size / ParallelUtils.getThreadCount() + 1, MIN_CHUNK_BYTES);
+        ArrayList<Callable<List<String>>> splitters =
+          new ArrayList<Callable<List<String>>>();
+        int start = 0;
+        while (start < size){
+          int end = Math.min(start + chunk, size);
+          while (end < size && buffer.get(end - 1) != '\n'){
+            end++;
+          }
+
+          final int chunkStart = start;
+          final int chunkEnd = end;
+          splitters.add(new Callable<List<String>>(){
+            public List<String> call()
+            {
+              ByteBuffer bytes = buffer.duplicate();
+              bytes.position(chunkStart);
+              bytes.limit(chunkEnd);
+              CharBuffer chars = Charset.defaultCharset().decode(bytes.slice());
+
+              ArrayList<String> lines = new ArrayList<String>();
+              int length = chars.limit();
+              int lineStart = 0;
+              for (int ii = 0; ii <= length; ii++){
+                if (ii == length || chars.get(ii) == '\n'){
+                  int lineEnd = ii;
+                  if (lineEnd > lineStart && chars.get(lineEnd - 1) == '\r'){
+                    lineEnd--;
+                  }
+                  if (ii < length || lineEnd > lineStart){
+                    lines.add(chars.subSequence(lineStart, lineEnd).toString());
+                  }
+                  lineStart = ii + 1;
+                }
+              }
+              return lines;
+            }
+          });
+          start = end;
+        }
+
+        ArrayList<String> lines = new ArrayList<String>();
+        for (List<String> result : ParallelUtils.invokeAll(splitters)){
+          lines.addAll(result);
+        }
+        return lines.toArray(new String[lines.size()]);
+      }finally{
+        IOUtils.closeQuietly(in);
+      }
     }
   }
 }
@@ -1,5 +1,5 @@
 /**
- * Copyright (C) 2005 - 2011  Eric Van Dewoestine
+ * Copyright (C) 2005 - 2013  Eric Van Dewoestine
  *
  * This program is free software: you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -16,11 +16,21 @@
  */
 package org.eclim.plugin.core.command.xml;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
 import java.io.FileInputStream;
-import java.io.StringWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
 
 import javax.xml.transform.sax.SAXSource;
@@ -40,6 +50,10 @@ import org.xml.sax.InputSource;
 
 /**
  * Command to format an xml file.
+ * <p/>
+ * The formatted document is streamed to the client as a json string while it
+ * is being transformed, so the size of the file has no bearing on the memory
+ * used by the command.
  *
  * @author Eric Van Dewoestine
  */
@@ -54,52 +68,208 @@ import org.xml.sax.InputSource;
 public class FormatCommand
   extends AbstractCommand
 {
+  private static final int BUFFER_SIZE = 8192;
+
+  // transformer factories configured w/ an indent-number, keyed by the indent.
+  private static final Map<Integer, TransformerFactory> FACTORIES =
+    new HashMap<Integer, TransformerFactory>();
+
   /**
    * {@inheritDoc}
    */
   public Object execute(CommandLine commandLine)
     throws Exception
   {
-    String restoreNewline = null;
-    FileInputStream in = null;
-    try{
-      String file = commandLine.getValue(Options.FILE_OPTION);
-      //int lineWidth = commandLine.getIntValue(Options.LINE_WIDTH_OPTION);
-      int indent = commandLine.getIntValue(Options.INDENT_OPTION);
-      String format = commandLine.getValue("m");
-
-      // set the line separator if necessary
-      String newline = System.getProperty("line.separator");
-      if (newline.equals("\r\n") && format.equals("unix")){
-        restoreNewline = newline;
-        System.setProperty("line.separator", "\n");
-      }else if (newline.equals("\n") && format.equals("dos")){
-        restoreNewline = newline;
-        System.setProperty("line.separator", "\r\n");
-      }
+    String file = commandLine.getValue(Options.FILE_OPTION);
+    //int lineWidth = commandLine.getIntValue(Options.LINE_WIDTH_OPTION);
+    int indent = commandLine.getIntValue(Options.INDENT_OPTION);
+    String format = commandLine.getValue("m");
+    String newline = "dos".equals(format) ? "\r\n" : "\n";
+
+    Transformer serializer = getTransformer(indent);
 
-      // javax.xml.transform (indentation issues)
-      TransformerFactory factory = TransformerFactory.newInstance();
-      factory.setAttribute("indent-number", Integer.valueOf(indent));
-      Transformer serializer = factory.newTransformer();
-      serializer.setOutputProperty(OutputKeys.INDENT, "yes");
-      // broken in 1.5
-      /*serializer.setOutputProperty(
-          "{http://xml.apache.org/xslt}indent-amount", String.valueOf(indent));
-      in = new FileInputStream(file);
-      serializer.transform(new SAXSource(new InputSource(in)),
-          new StreamResult(getContext().out));*/
-
-      StringWriter out = new StringWriter();
-      in = new FileInputStream(file);
+    InputStream in = null;
+    JsonStringWriter out = null;
+    boolean finished = false;
+    try{
+      in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+      out = new JsonStringWriter(new BufferedWriter(
+            new OutputStreamWriter(getContext().out), BUFFER_SIZE), newline);
       serializer.transform(
           new SAXSource(new InputSource(in)), new StreamResult(out));
-
-      return out.toString();
+      out.finish();
+      finished = true;
     }finally{
+      // the transform failed part way through: terminate the partial json
+      // string so the output remains parseable, and let the exception
+      // propagate so that the error (and non-zero exit status) tell the client
+      // to discard the partial result.
+      if (out != null && !finished){
+        out.abort();
+      }
       IOUtils.closeQuietly(in);
-      if (restoreNewline != null){
-        System.setProperty("line.separator", restoreNewline);
+    }
+
+    // result has already been written to the client.
+    return null;
+  }
+
+  /**
+   * Gets a new identity transformer which indents using the supplied number of
+   * spaces.
+   *
+   * @param indent The number of spaces to indent with.
+   * @return The Transformer.
+   */
+  private static Transformer getTransformer(int indent)
+    throws TransformerConfigurationException
+  {
+    Transformer serializer;
+    synchronized(FACTORIES){
+      TransformerFactory factory = FACTORIES.get(indent);
+      if (factory == null){
+        factory = TransformerFactory.newInstance();
+        // javax.xml.transform (indentation issues)
+        factory.setAttribute("indent-number", Integer.valueOf(indent));
+        FACTORIES.put(indent, factory);
+      }
+      // TransformerFactory is not guaranteed to be thread safe, so transformers
+      // are created while holding the lock.
+      serializer = factory.newTransformer();
+    }
+    serializer.setOutputProperty(OutputKeys.INDENT, "yes");
+    // broken in 1.5 (indent-number above takes care of it there)
+    serializer.setOutputProperty(
+        "{http://xml.apache.org/xslt}indent-amount", String.valueOf(indent));
+    return serializer;
+  }
+
+  /**
+   * Writer which writes everything it is given as the contents of a single
+   * json string, normalizing line endings to the requested newline along the
+   * way so that we never have to alter the global line.separator property.
+   */
+  private static class JsonStringWriter
+    extends FilterWriter
+  {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private String newline;
+    private boolean started;
+    private boolean carriageReturn;
+
+    public JsonStringWriter(Writer out, String newline)
+    {
+      super(out);
+      this.newline = newline;
+    }
+
+    @Override
+    public void write(int c)
+      throws IOException
+    {
+      if (!started){
+        out.write('"');
+        started = true;
+      }
+
+      if (c == '\n' && carriageReturn){
+        carriageReturn = false;
+        return;
+      }
+      carriageReturn = c == '\r';
+
+      if (c == '\r' || c == '\n'){
+        for (int ii = 0; ii < newline.length(); ii++){
+          writeEscaped(newline.charAt(ii));
+        }
+      }else{
+        writeEscaped(c);
+      }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len)
+      throws IOException
+    {
+      for (int ii = off; ii < off + len; ii++){
+        write(cbuf[ii]);
+      }
+    }
+
+    @Override
+    public void write(String str, int off, int len)
+      throws IOException
+    {
+      for (int ii = off; ii < off + len; ii++){
+        write(str.charAt(ii));
+      }
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      // the transformer may close the result writer, but the underlying stream
+      // is the client connection, so only flush here.
+      flush();
+    }
+
+    /**
+     * Terminates the json string and flushes it to the client.
+     */
+    public void finish()
+      throws IOException
+    {
+      if (!started){
+        out.write('"');
+        started = true;
+      }
+      out.write('"');
+      out.write('\n');
+      out.flush();
+    }
+
+    /**
+     * Terminates the json string after a failure, ignoring any error doing so
+     * (the client connection may be what failed).
+     */
+    public void abort()
+    {
+      try{
+        finish();
+      }catch(IOException ignore){
+      }
+    }
+
+    private void writeEscaped(int c)
+      throws IOException
+    {
+      switch (c){
+        case '"':
+        case '\\':
+          out.write('\\');
+          out.write(c);
+          break;
+        case '\n':
+          out.write("\\n");
+          break;
+        case '\r':
+          out.write("\\r");
+          break;
+        case '\t':
+          out.write("\\t");
+          break;
+        default:
+          if (c < 0x20 || c == 0x2028 || c == 0x2029){
+            out.write("\\u");
+            out.write(HEX[(c >> 12) & 0xf]);
+            out.write(HEX[(c >> 8) & 0xf]);
+            out.write(HEX[(c >> 4) & 0xf]);
+            out.write(HEX[c & 0xf]);
+          }else{
+            out.write(c);
+          }
       }
     }
   }
@@ -0,0 +1,213 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.xml;
+
+import java.io.PrintStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import java.util.concurrent.Callable;
+
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+import org.eclim.annotation.Command;
+
+import org.eclim.command.CommandLine;
+import org.eclim.command.Error;
+import org.eclim.command.Options;
+
+import org.eclim.logging.Logger;
+
+import org.eclim.plugin.core.util.ParallelUtils;
+import org.eclim.plugin.core.util.ProjectUtils;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+
+import com.google.gson.Gson;
+
+/**
+ * Command to validate all the xml files of a project.
+ * <p/>
+ * Files are validated in parallel, sharing the grammars already compiled by
+ * previous validations, and the errors are streamed to the client grouped by
+ * file as the validation of each file completes. Each line of output is a
+ * json list holding the file and errors of one file (files without errors
+ * are omitted), and the output always ends with an empty list, so a stream
+ * which ends without it was cut short by an error.
+ * <p/>
+ * The files validated can be narrowed using comma separated include and
+ * exclude globs (relative to the project root, where '**' matches any number
+ * of directories), which default to every file with an xml extension.
+ *
+ * @author Eric Van Dewoestine
+ */
+@Command(
+  name = "xml_validate_project",
+  options =
+    "REQUIRED p project ARG," +
+    "OPTIONAL i includes ARG," +
+    "OPTIONAL e excludes ARG," +
+    "OPTIONAL s schema NOARG"
+)
+public class ValidateProjectCommand
+  extends ValidateCommand
+{
+  private static final Logger logger =
+    Logger.getLogger(ValidateProjectCommand.class);
+
+  private static final String DEFAULT_INCLUDES = "**/*.xml";
+
+  private static final Set<String> IGNORE_DIRS = new HashSet<String>(
+      Arrays.asList(new String[]{"CVS", ".bzr", ".git", ".hg", ".svn"}));
+
+  /**
+   * {@inheritDoc}
+   */
+  public Object execute(CommandLine commandLine)
+    throws Exception
+  {
+    String projectName = commandLine.getValue(Options.PROJECT_OPTION);
+    String includes = commandLine.getValue(Options.INCLUDES_OPTION);
+    String excludes = commandLine.getValue(Options.EXCLUDES_OPTION);
+    final boolean schema = commandLine.hasOption(Options.SCHEMA_OPTION);
+
+    final IProject project = ProjectUtils.getProject(projectName, true);
+    final Pattern include = toPattern(
+        includes != null ? includes : DEFAULT_INCLUDES);
+    final Pattern exclude = excludes != null ? toPattern(excludes) : null;
+
+    final ArrayList<String> files = new ArrayList<String>();
+    project.accept(new IResourceProxyVisitor(){
+      public boolean visit(IResourceProxy proxy)
+      {
+        switch (proxy.getType()){
+          case IResource.FOLDER:
+            return !proxy.isDerived() && !IGNORE_DIRS.contains(proxy.getName());
+          case IResource.FILE:
+            String path = proxy.requestFullPath().removeFirstSegments(1).toString();
+            if (include.matcher(path).matches() &&
+                (exclude == null || !exclude.matcher(path).matches()))
+            {
+              files.add(path);
+            }
+            return false;
+          default:
+            return true;
+        }
+      }
+    }, IResource.NONE);
+    logger.debug("validating {} xml files in project: {}",
+        files.size(), projectName);
+
+    final PrintStream out = getContext().out;
+    final Gson gson = new Gson();
+    ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    for (final String file : files){
+      tasks.add(new Callable<Object>(){
+        public Object call()
+          throws Exception
+        {
+          List<Error> errors;
+          try{
+            errors = validate(project.getName(), file, schema, null);
+          }catch(Exception e){
+            // report the failure against the file rather than aborting the
+            // validation of every other file.
+            logger.debug("Error validating file: " + file, e);
+            errors = new ArrayList<Error>();
+            errors.add(new Error(
+                  e.getMessage() != null ? e.getMessage() : e.toString(),
+                  ProjectUtils.getFilePath(project, file), 1, 1, false));
+          }
+
+          if (!errors.isEmpty()){
+            HashMap<String,Object> result = new HashMap<String,Object>();
+            result.put("file", file);
+            result.put("errors", errors);
+            String json = gson.toJson(Collections.singletonList(result));
+            synchronized(out){
+              out.println(json);
+              out.flush();
+            }
+          }
+          return null;
+        }
+      });
+    }
+
+    ParallelUtils.invokeAll(tasks);
+    synchronized(out){
+      out.println("[]");
+      out.flush();
+    }
+    return null;
+  }
+
+  /**
+   * Converts the supplied comma separated globs into a single regex.
+   *
+   * @param globs The globs.
+   * @return The Pattern.
+   */
+  private Pattern toPattern(String globs)
+  {
+    StringBuffer regex = new StringBuffer();
+    for (String glob : StringUtils.split(globs, ',')){
+      glob = glob.trim();
+      if (regex.length() > 0){
+        regex.append('|');
+      }
+      regex.append("(?:");
+      for (int ii = 0; ii < glob.length(); ii++){
+        char c = glob.charAt(ii);
+        if (c == '*'){
+          if (ii + 1 < glob.length() && glob.charAt(ii + 1) == '*'){
+            ii++;
+            // '**/' also matches no directory at all
+            if (ii + 1 < glob.length() && glob.charAt(ii + 1) == '/'){
+              ii++;
+              regex.append("(?:.*/)?");
+            }else{
+              regex.append(".*");
+            }
+          }else{
+            regex.append("[^/]*");
+          }
+        }else if (c == '?'){
+          regex.append("[^/]");
+        }else if ("\\.[]{}()+-^$|".indexOf(c) != -1){
+          regex.append('\\').append(c);
+        }else{
+          regex.append(c);
+        }
+      }
+      regex.append(')');
+    }
+    return Pattern.compile(regex.toString());
+  }
+}
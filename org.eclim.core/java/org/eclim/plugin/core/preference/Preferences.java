@@ -17,9 +17,15 @@
 package org.eclim.plugin.core.preference;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import java.util.concurrent.ConcurrentHashMap;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.apache.commons.lang.ArrayUtils;
 
 import org.eclim.Services;
@@ -30,6 +36,8 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.ProjectScope;
 
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
 import org.eclipse.core.runtime.preferences.IScopeContext;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 
@@ -42,6 +50,10 @@ import com.google.gson.Gson;
  * jdt compiler source version), and the word 'preference' for eclim provided
  * key values.
  *
+ * Resolved values are held in immutable per project snapshots which are only
+ * rebuilt after a value is set or the underlying eclim preference nodes
+ * report a change, so reads are lock and allocation free.
+ *
  * @author Eric Van Dewoestine
  */
 public class Preferences
@@ -65,12 +77,14 @@ public class Preferences
   private Map<String, Preference> preferences = new HashMap<String, Preference>();
   private Map<String, Option> options = new HashMap<String, Option>();
 
-  // cache preference values
-  private Map<String, Map<String, String>> preferenceValues =
-    new HashMap<String, Map<String, String>>();
-  // cache option values
-  private Map<String, Map<String, String>> optionValues =
-    new HashMap<String, Map<String, String>>();
+  // cached option/preference values by project name (or GLOBAL)
+  private AtomicReference<Snapshots> snapshots =
+    new AtomicReference<Snapshots>(new Snapshots());
+
+  // preference nodes we are listening to for changes.
+  private AtomicBoolean listeningGlobal = new AtomicBoolean();
+  private ConcurrentHashMap<String, ProjectListener> projectListeners =
+    new ConcurrentHashMap<String, ProjectListener>();
 
   private Preferences() {}
 
@@ -107,7 +121,7 @@ public class Preferences
   public void addPreference(Preference preference)
   {
     preferences.put(preference.getName(), preference);
-    preferenceValues.clear();
+    invalidate(null);
   }
 
   /**
@@ -128,7 +142,7 @@ public class Preferences
   public void addOption(Option option)
   {
     options.put(option.getName(), option);
-    optionValues.clear();
+    invalidate(null);
   }
 
   /**
@@ -148,8 +162,11 @@ public class Preferences
    */
   public void clearProjectValueCache(IProject project)
   {
-    preferenceValues.remove(project.getName());
-    optionValues.remove(project.getName());
+    invalidate(project.getName());
+    ProjectListener listener = projectListeners.remove(project.getName());
+    if (listener != null){
+      listener.remove();
+    }
   }
 
   /**
@@ -167,63 +184,65 @@ public class Preferences
    * Gets a map of all options/preferences.
    *
    * @param project The current project.
-   * @return A map of key values.
+   * @return An unmodifiable map of key values.
    */
   public Map<String, String> getValues(IProject project)
     throws Exception
   {
     String cacheKey = project != null ? project.getName() : GLOBAL;
 
-    // eclim preferences
-    Map<String, String> prefVals = preferenceValues.get(cacheKey);
-    if(prefVals == null){
-      prefVals = new HashMap<String, String>();
-      preferenceValues.put(cacheKey, prefVals);
+    Map<String, String> values = snapshots.get().values.get(cacheKey);
+    if (values != null){
+      return values;
+    }
 
-      IScopeContext context = InstanceScope.INSTANCE;
+    IEclipsePreferences globalPrefs = InstanceScope.INSTANCE.getNode(NODE_NAME);
+    initializeDefaultPreferences(globalPrefs);
+    addChangeListeners(globalPrefs, project);
 
-      // global
-      IEclipsePreferences globalPrefs = context.getNode(NODE_NAME);
-      initializeDefaultPreferences(globalPrefs);
-      for(String key : globalPrefs.keys()){
-        prefVals.put(key, globalPrefs.get(key, null));
-      }
+    // note the generation before loading the values so that values loaded
+    // concurrently with a change are not cached.
+    long generation = snapshots.get().generation;
 
-      // project
-      if (project != null){
-        context = new ProjectScope(project);
-        IEclipsePreferences projectPrefs = context.getNode(NODE_NAME);
-        for(String key : projectPrefs.keys()){
-          prefVals.put(key, projectPrefs.get(key, null));
+    // eclipse options
+    Map<String, String> all = new HashMap<String, String>();
+    for(OptionHandler handler : optionHandlers.values()){
+      String nature = handler.getNature();
+      if (CORE.equals(nature) ||
+          project == null ||
+          project.getNature(nature) != null)
+      {
+        Map<String, String> ops = project == null ?
+          handler.getValues() : handler.getValues(project);
+        if (ops != null){
+          all.putAll(ops);
         }
       }
     }
 
-    // eclipse option
-    Map<String, String> optVals = optionValues.get(cacheKey);
-    if(optVals == null){
-      optVals = new HashMap<String, String>();
-      optionValues.put(cacheKey, optVals);
-      for(OptionHandler handler : optionHandlers.values()){
-        String nature = handler.getNature();
-        if (CORE.equals(nature) ||
-            project == null ||
-            project.getNature(nature) != null)
-        {
-          Map<String, String> ops = project == null ?
-            handler.getValues() : handler.getValues(project);
-          if (ops != null){
-            optVals.putAll(ops);
-          }
-        }
+    // eclim preferences: global
+    for(String key : globalPrefs.keys()){
+      all.put(key, globalPrefs.get(key, null));
+    }
+
+    // eclim preferences: project
+    if (project != null){
+      IEclipsePreferences projectPrefs =
+        new ProjectScope(project).getNode(NODE_NAME);
+      for(String key : projectPrefs.keys()){
+        all.put(key, projectPrefs.get(key, null));
       }
     }
 
-    Map<String, String> all =
-      new HashMap<String, String>(preferenceValues.size() + optionValues.size());
-    all.putAll(optVals);
-    all.putAll(prefVals);
-    return all;
+    values = Collections.unmodifiableMap(all);
+    Snapshots current = snapshots.get();
+    while (current.generation == generation){
+      if (snapshots.compareAndSet(current, current.with(cacheKey, values))){
+        break;
+      }
+      current = snapshots.get();
+    }
+    return values;
   }
 
   /**
@@ -424,7 +443,7 @@ public class Preferences
         }else{
           handler.setOption(project, name, value);
         }
-        optionValues.clear();
+        invalidate(null);
       }else{
         logger.warn("No handler found for option '{}'", name);
       }
@@ -476,7 +495,7 @@ public class Preferences
         projectPrefs.flush();
       }
     }
-    preferenceValues.clear();
+    invalidate(null);
   }
 
   /**
@@ -522,4 +541,121 @@ public class Preferences
     throw new IllegalArgumentException(
         Services.getMessage("setting.not.found", name));
   }
+
+  /**
+   * Discards the cached values for the supplied key (project name), or all
+   * cached values if the key is null.
+   *
+   * @param cacheKey The cache key or null.
+   */
+  private void invalidate(String cacheKey)
+  {
+    Snapshots current = null;
+    do{
+      current = snapshots.get();
+    }while(!snapshots.compareAndSet(current, current.without(cacheKey)));
+  }
+
+  /**
+   * Registers listeners on the global and (if supplied) project eclim
+   * preference nodes to discard cached values when the nodes are modified.
+   *
+   * @param globalPrefs The global eclim preferences node.
+   * @param project The project or null.
+   */
+  private void addChangeListeners(
+      IEclipsePreferences globalPrefs, IProject project)
+  {
+    if (listeningGlobal.compareAndSet(false, true)){
+      globalPrefs.addPreferenceChangeListener(new IPreferenceChangeListener(){
+        public void preferenceChange(PreferenceChangeEvent event)
+        {
+          invalidate(null);
+        }
+      });
+    }
+
+    if (project != null && !projectListeners.containsKey(project.getName())){
+      ProjectListener listener = new ProjectListener(
+          project.getName(), new ProjectScope(project).getNode(NODE_NAME));
+      if (projectListeners.putIfAbsent(project.getName(), listener) == null){
+        listener.node.addPreferenceChangeListener(listener);
+      }
+    }
+  }
+
+  /**
+   * Listener which invalidates a project's cached values when its eclim
+   * preference node changes.
+   */
+  private class ProjectListener
+    implements IPreferenceChangeListener
+  {
+    public final String name;
+    public final IEclipsePreferences node;
+
+    public ProjectListener(String name, IEclipsePreferences node)
+    {
+      this.name = name;
+      this.node = node;
+    }
+
+    @Override
+    public void preferenceChange(PreferenceChangeEvent event)
+    {
+      invalidate(name);
+    }
+
+    /**
+     * Removes this listener from the node it was registered on.
+     */
+    public void remove()
+    {
+      try{
+        node.removePreferenceChangeListener(this);
+      }catch(IllegalStateException ise){
+        // node already removed along with its project.
+      }
+    }
+  }
+
+  /**
+   * Immutable set of cached values, replaced wholesale on every change.
+   */
+  private static class Snapshots
+  {
+    public final long generation;
+    public final Map<String, Map<String, String>> values;
+
+    public Snapshots()
+    {
+      this(0, Collections.<String, Map<String, String>>emptyMap());
+    }
+
+    private Snapshots(long generation, Map<String, Map<String, String>> values)
+    {
+      this.generation = generation;
+      this.values = values;
+    }
+
+    public Snapshots with(String key, Map<String, String> value)
+    {
+      HashMap<String, Map<String, String>> copy =
+        new HashMap<String, Map<String, String>>(values);
+      copy.put(key, value);
+      return new Snapshots(generation, Collections.unmodifiableMap(copy));
+    }
+
+    public Snapshots without(String key)
+    {
+      if (key == null){
+        return new Snapshots(generation + 1,
+            Collections.<String, Map<String, String>>emptyMap());
+      }
+      HashMap<String, Map<String, String>> copy =
+        new HashMap<String, Map<String, String>>(values);
+      copy.remove(key);
+      return new Snapshots(generation + 1, Collections.unmodifiableMap(copy));
+    }
+  }
 }
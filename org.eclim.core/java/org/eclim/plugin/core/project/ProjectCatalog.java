@@ -0,0 +1,342 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.project;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclim.logging.Logger;
+
+import org.eclim.plugin.core.util.ProjectUtils;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileStore;
+
+import org.eclipse.core.internal.resources.LinkDescription;
+import org.eclipse.core.internal.resources.Project;
+import org.eclipse.core.internal.resources.ProjectDescription;
+import org.eclipse.core.internal.resources.ProjectInfo;
+import org.eclipse.core.internal.resources.ResourceInfo;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+/**
+ * Catalog of the workspace's projects which caches each project's name, path,
+ * nature aliases, and resolved linked resource locations so that listing
+ * projects doesn't require consulting eclipse's resource tree on every
+ * request.
+ * <p/>
+ * Entries are computed lazily and evicted as resource deltas report projects
+ * being added, removed, opened, closed, or having their description altered.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class ProjectCatalog
+  implements IResourceChangeListener
+{
+  private static final Logger logger = Logger.getLogger(ProjectCatalog.class);
+
+  private static final int FLAGS =
+    IResourceDelta.DESCRIPTION | IResourceDelta.OPEN;
+
+  private static final IPath DESCRIPTION_FILE =
+    new Path(IProjectDescription.DESCRIPTION_FILE_NAME);
+
+  private static ProjectCatalog instance = new ProjectCatalog();
+
+  private ConcurrentHashMap<String,Entry> entries =
+    new ConcurrentHashMap<String,Entry>();
+
+  private volatile String[] names;
+
+  // advanced on every eviction so that an entry (or name list) built
+  // concurrently with one can be discarded rather than cached.
+  private AtomicLong generation = new AtomicLong();
+
+  private ProjectCatalog()
+  {
+  }
+
+  /**
+   * Gets the shared catalog instance.
+   *
+   * @return The ProjectCatalog.
+   */
+  public static ProjectCatalog getInstance()
+  {
+    return instance;
+  }
+
+  /**
+   * Gets the catalog entries for all projects in the workspace.
+   *
+   * @return List of entries ordered by project name.
+   */
+  public List<Entry> getProjects()
+    throws Exception
+  {
+    return getProjects(null, 0, -1);
+  }
+
+  /**
+   * Gets a page of catalog entries for the projects whose name starts with the
+   * supplied prefix.
+   *
+   * @param prefix The project name prefix (may be null).
+   * @param offset The number of matching projects to skip.
+   * @param limit The max number of entries to return or -1 for no limit.
+   * @return List of entries ordered by project name.
+   */
+  public List<Entry> getProjects(String prefix, int offset, int limit)
+    throws Exception
+  {
+    String[] names = getNames();
+    int start = 0;
+    if (prefix != null && prefix.length() > 0){
+      start = Arrays.binarySearch(names, prefix);
+      if (start < 0){
+        start = -(start + 1);
+      }
+    }else{
+      prefix = null;
+    }
+
+    ArrayList<Entry> results = new ArrayList<Entry>();
+    int skipped = 0;
+    for (int ii = start; ii < names.length; ii++){
+      if (prefix != null && !names[ii].startsWith(prefix)){
+        break;
+      }
+      if (limit >= 0 && results.size() >= limit){
+        break;
+      }
+      if (skipped < offset){
+        skipped++;
+        continue;
+      }
+
+      Entry entry = getProject(names[ii]);
+      if (entry != null){
+        results.add(entry);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Gets the catalog entry for the project with the supplied name.
+   *
+   * @param name The project name.
+   * @return The Entry or null if the project does not exist.
+   */
+  public Entry getProject(String name)
+    throws Exception
+  {
+    Entry entry = entries.get(name);
+    if (entry == null){
+      IProject project = ProjectUtils.getProject(name);
+      if (!project.exists()){
+        return null;
+      }
+      long current = generation.get();
+      entry = new Entry(project);
+      entries.put(name, entry);
+
+      // evicted while the entry was being built, so it may be stale.
+      if (generation.get() != current){
+        entries.remove(name, entry);
+      }
+    }
+    return entry;
+  }
+
+  /**
+   * {@inheritDoc}
+   * @see IResourceChangeListener#resourceChanged(IResourceChangeEvent)
+   */
+  @Override
+  public void resourceChanged(IResourceChangeEvent event)
+  {
+    IResourceDelta delta = event.getDelta();
+    if (delta == null){
+      return;
+    }
+
+    for (IResourceDelta child : delta.getAffectedChildren()){
+      IResource resource = child.getResource();
+      if (resource.getType() != IResource.PROJECT){
+        continue;
+      }
+
+      if (child.getKind() != IResourceDelta.CHANGED){
+        generation.incrementAndGet();
+        names = null;
+        entries.remove(resource.getName());
+      }else if ((child.getFlags() & FLAGS) != 0 ||
+          child.findMember(DESCRIPTION_FILE) != null)
+      {
+        // links are stored in the .project file, so any change to it may
+        // alter the project's linked resources.
+        generation.incrementAndGet();
+        entries.remove(resource.getName());
+      }else{
+        continue;
+      }
+      logger.debug("evicted catalog entry for: {}", resource.getName());
+    }
+  }
+
+  private String[] getNames()
+  {
+    String[] names = this.names;
+    if (names == null){
+      long current = generation.get();
+      IProject[] projects =
+        ResourcesPlugin.getWorkspace().getRoot().getProjects();
+      names = new String[projects.length];
+      for (int ii = 0; ii < projects.length; ii++){
+        names[ii] = projects[ii].getName();
+      }
+      Arrays.sort(names);
+      this.names = names;
+      if (generation.get() != current){
+        this.names = null;
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Immutable snapshot of the information eclim reports for a project.
+   */
+  public static class Entry
+  {
+    private String name;
+    private String path;
+    private boolean open;
+    private String[] natures;
+    private Map<String,String> links;
+
+    private Entry(IProject project)
+      throws Exception
+    {
+      name = project.getName();
+      path = ProjectUtils.getPath(project);
+      open = project.isOpen();
+
+      if (open){
+        String[] aliases = ProjectNatureFactory.getProjectNatureAliases(project);
+        if (aliases.length == 0){
+          aliases = new String[]{ProjectNatureFactory.NONE};
+        }
+        natures = aliases;
+        links = Collections.unmodifiableMap(resolveLinks(project, path));
+      }else{
+        natures = new String[0];
+      }
+    }
+
+    public String getName()
+    {
+      return name;
+    }
+
+    public String getPath()
+    {
+      return path;
+    }
+
+    public boolean isOpen()
+    {
+      return open;
+    }
+
+    /**
+     * Gets the project's nature aliases ("none" if the project is open but
+     * has no registered natures, empty if the project is closed).
+     *
+     * @return Array of nature aliases.
+     */
+    public String[] getNatures()
+    {
+      return natures.clone();
+    }
+
+    /**
+     * Gets a map of project relative link paths to the resolved location of
+     * the link's target.
+     *
+     * @return Map of links or null if the project is closed.
+     */
+    public Map<String,String> getLinks()
+    {
+      return links;
+    }
+
+    private static HashMap<String,String> resolveLinks(
+        IProject project, String projectPath)
+      throws Exception
+    {
+      HashMap<String,String> links = new HashMap<String,String>();
+      if (!new File(projectPath).exists()){
+        return links;
+      }
+
+      ResourceInfo pinfo = ((Project)project).getResourceInfo(false, false);
+      if (pinfo == null){
+        return links;
+      }
+      ProjectDescription desc = ((ProjectInfo)pinfo).getDescription();
+      if (desc != null){
+        @SuppressWarnings("unchecked")
+        HashMap<IPath, LinkDescription> linfo =
+          (HashMap<IPath, LinkDescription>)desc.getLinks();
+        if (linfo != null){
+          for (IPath path : linfo.keySet()){
+            LinkDescription link = linfo.get(path);
+            IResource member = project.findMember(link.getProjectRelativePath());
+            IFileStore store = member != null ?
+              EFS.getStore(member.getLocationURI()) : null;
+            String resolvedPath = store != null ?
+              store.toString() : link.getLocationURI().getPath();
+            links.put(path.toString(), resolvedPath.replace("\\", "/"));
+          }
+        }
+      }
+      return links;
+    }
+  }
+}
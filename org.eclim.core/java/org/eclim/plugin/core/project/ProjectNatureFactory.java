@@ -20,16 +20,29 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.ArrayUtils;
 
 import org.eclim.logging.Logger;
 
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
 
 /**
  * Factory for registering project natures.
+ * <p/>
+ * The natures and aliases of each open project are computed once and cached
+ * until the project's description changes (see {@link #getChangeListener()}).
  *
  * @author Eric Van Dewoestine
  */
@@ -43,6 +56,18 @@ public class ProjectNatureFactory
   private static Map<String,String[]> natureAliases =
     new HashMap<String,String[]>();
 
+  private static Map<String,String> aliasesByNature =
+    new HashMap<String,String>();
+
+  private static ConcurrentHashMap<String,NatureSnapshot> snapshots =
+    new ConcurrentHashMap<String,NatureSnapshot>();
+
+  // advanced on every invalidation so that a snapshot computed concurrently
+  // with one can be discarded rather than cached.
+  private static AtomicLong generation = new AtomicLong();
+
+  private static final ChangeListener listener = new ChangeListener();
+
   /**
    * Registers a project nature.
    *
@@ -51,8 +76,7 @@ public class ProjectNatureFactory
    */
   public static void addNature(String alias, String nature)
   {
-    logger.debug("add nature alias: {}={}", alias, nature);
-    natureAliases.put(alias, new String[]{nature});
+    addNature(alias, new String[]{nature});
   }
 
   /**
@@ -64,7 +88,30 @@ public class ProjectNatureFactory
   public static void addNature(String alias, String[] natures)
   {
     logger.debug("add nature alias: {}={}", alias, Arrays.toString(natures));
-    natureAliases.put(alias, natures);
+    String[] previous = natureAliases.put(alias, natures);
+
+    // alias re-registered, so drop its reverse mapping from the old nature
+    // (falling back to any other alias of that nature).
+    if (previous != null){
+      String old = previous[previous.length - 1];
+      if (alias.equals(aliasesByNature.get(old))){
+        aliasesByNature.remove(old);
+        for (Map.Entry<String,String[]> entry : natureAliases.entrySet()){
+          String[] ids = entry.getValue();
+          if (ids[ids.length - 1].equals(old)){
+            aliasesByNature.put(old, entry.getKey());
+            break;
+          }
+        }
+      }
+    }
+
+    String nature = natures[natures.length - 1];
+    if (!aliasesByNature.containsKey(nature)){
+      aliasesByNature.put(nature, alias);
+    }
+    generation.incrementAndGet();
+    snapshots.clear();
   }
 
   /**
@@ -118,12 +165,7 @@ public class ProjectNatureFactory
    */
   public static String getAliasForNature(String natureId)
   {
-    for(String key : natureAliases.keySet()){
-      if(natureId.equals(getNatureForAlias(key))){
-        return key;
-      }
-    }
-    return null;
+    return aliasesByNature.get(natureId);
   }
 
   /**
@@ -136,14 +178,7 @@ public class ProjectNatureFactory
   public static String[] getProjectNatureAliases(IProject project)
     throws Exception
   {
-    ArrayList<String> aliases = new ArrayList<String>();
-    for(String key : natureAliases.keySet()){
-      if(project.hasNature(getNatureForAlias(key))){
-        aliases.add(key);
-      }
-    }
-
-    return aliases.toArray(new String[aliases.size()]);
+    return getSnapshot(project).aliases.clone();
   }
 
   /**
@@ -155,16 +190,144 @@ public class ProjectNatureFactory
   public static String[] getProjectNatures(IProject project)
     throws Exception
   {
+    return getSnapshot(project).natures.clone();
+  }
+
+  /**
+   * Determines if the supplied project has the supplied nature, using the
+   * cached project natures.
+   *
+   * @param project The project.
+   * @param natureId The nature id.
+   * @return true if the project has the nature, false otherwise.
+   */
+  public static boolean hasNature(IProject project, String natureId)
+    throws Exception
+  {
+    return getSnapshot(project).ids.contains(natureId);
+  }
+
+  /**
+   * Gets the resource change listener which invalidates cached project natures
+   * when a project's description changes or the project is closed, removed,
+   * etc.
+   *
+   * @return The IResourceChangeListener.
+   */
+  public static IResourceChangeListener getChangeListener()
+  {
+    return listener;
+  }
+
+  private static NatureSnapshot getSnapshot(IProject project)
+    throws Exception
+  {
+    // natures of a closed project can't be read, so let eclipse raise the
+    // appropriate error.
+    if (!project.isOpen()){
+      return createSnapshot(project);
+    }
+
+    String name = project.getName();
+    NatureSnapshot snapshot = snapshots.get(name);
+    if (snapshot == null){
+      long current = generation.get();
+      snapshot = createSnapshot(project);
+      snapshots.put(name, snapshot);
+
+      // invalidated while the snapshot was being created, so it may be stale.
+      if (generation.get() != current){
+        snapshots.remove(name, snapshot);
+      }
+    }
+    return snapshot;
+  }
+
+  private static NatureSnapshot createSnapshot(IProject project)
+    throws Exception
+  {
+    HashSet<String> ids = new HashSet<String>(
+        Arrays.asList(project.getDescription().getNatureIds()));
+
+    ArrayList<String> aliases = new ArrayList<String>();
     ArrayList<String> natures = new ArrayList<String>();
     for(String key : natureAliases.keySet()){
-      String[] ids = natureAliases.get(key);
-      for (String id : ids){
-        if(project.hasNature(id)){
+      if(ids.contains(getNatureForAlias(key))){
+        aliases.add(key);
+      }
+      for (String id : natureAliases.get(key)){
+        if(ids.contains(id)){
           natures.add(id);
         }
       }
     }
 
-    return natures.toArray(new String[natures.size()]);
+    return new NatureSnapshot(
+        ids,
+        aliases.toArray(new String[aliases.size()]),
+        natures.toArray(new String[natures.size()]));
+  }
+
+  /**
+   * Immutable view of a project's natures and nature aliases.
+   */
+  private static class NatureSnapshot
+  {
+    public final Set<String> ids;
+    public final String[] aliases;
+    public final String[] natures;
+
+    public NatureSnapshot(Set<String> ids, String[] aliases, String[] natures)
+    {
+      this.ids = ids;
+      this.aliases = aliases;
+      this.natures = natures;
+    }
+  }
+
+  /**
+   * Listener which evicts cached natures for projects whose description has
+   * changed or which have been opened, closed, or removed.
+   */
+  private static class ChangeListener
+    implements IResourceChangeListener
+  {
+    private static final int FLAGS =
+      IResourceDelta.DESCRIPTION | IResourceDelta.OPEN;
+
+    @Override
+    public void resourceChanged(IResourceChangeEvent event)
+    {
+      int type = event.getType();
+      if (type == IResourceChangeEvent.PRE_CLOSE ||
+          type == IResourceChangeEvent.PRE_DELETE)
+      {
+        IResource resource = event.getResource();
+        if (resource != null){
+          generation.incrementAndGet();
+          snapshots.remove(resource.getName());
+        }
+        return;
+      }
+
+      IResourceDelta delta = event.getDelta();
+      if (delta == null){
+        return;
+      }
+
+      for (IResourceDelta child : delta.getAffectedChildren()){
+        if (child.getResource().getType() != IResource.PROJECT){
+          continue;
+        }
+        if (child.getKind() != IResourceDelta.CHANGED ||
+            (child.getFlags() & FLAGS) != 0)
+        {
+          logger.debug(
+              "invalidating natures for: {}", child.getResource().getName());
+          generation.incrementAndGet();
+          snapshots.remove(child.getResource().getName());
+        }
+      }
+    }
   }
 }
@@ -0,0 +1,483 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+import org.eclim.Services;
+
+import org.eclim.logging.Logger;
+
+import org.eclim.util.IOUtils;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Persistent catalog of the dtds and schemas used when validating xml files,
+ * which maps public and system ids to local copies of those grammars.
+ * <p/>
+ * The catalog is built from OASIS XML Catalog files: the catalog.xml shipped
+ * in the resources of each eclim plugin, the user's own
+ * ~/.eclim/grammars/catalog.xml (along with any catalogs it references via
+ * nextCatalog), and ~/.eclim/grammars/downloads.xml, which eclim maintains
+ * for the remote grammars it has downloaded. Every entry is loaded into an in
+ * memory index the first time a grammar is resolved, so resolving a
+ * cataloged grammar never touches the network.
+ * <p/>
+ * Grammars not found in the catalog are downloaded once into
+ * ~/.eclim/grammars/&lt;scheme&gt;/&lt;host&gt;/&lt;path&gt; and added to the
+ * downloads catalog. Failed downloads are remembered for the rest of the
+ * session.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class GrammarCatalog
+{
+  private static final Logger logger = Logger.getLogger(GrammarCatalog.class);
+
+  private static final String CATALOG_NS =
+    "urn:oasis:names:tc:entity:xmlns:xml:catalog";
+  private static final String XML_NS = "http://www.w3.org/XML/1998/namespace";
+
+  private static final String SHIPPED_CATALOG = "/resources/catalog.xml";
+  private static final String USER_CATALOG = "catalog.xml";
+  private static final String DOWNLOADS_CATALOG = "downloads.xml";
+
+  // a uri scheme (of more than one char to exclude windows drive letters)
+  private static final Pattern ABSOLUTE =
+    Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.-]+:");
+
+  private static final int CONNECT_TIMEOUT = 3000;
+  private static final int READ_TIMEOUT = 5000;
+
+  private static GrammarCatalog instance = new GrammarCatalog(
+      new File(Services.DOT_ECLIM, "grammars"));
+
+  private File dir;
+  private volatile boolean loaded;
+
+  private Map<String,String> publicIds = new ConcurrentHashMap<String,String>();
+  private Map<String,String> systemIds = new ConcurrentHashMap<String,String>();
+  private List<String[]> rewrites = new ArrayList<String[]>();
+  private List<String[]> suffixes = new ArrayList<String[]>();
+
+  private Map<String,String> downloads = new LinkedHashMap<String,String>();
+  private Map<String,IOException> failures =
+    new ConcurrentHashMap<String,IOException>();
+  private Object downloadLock = new Object();
+
+  private GrammarCatalog(File dir)
+  {
+    this.dir = dir;
+  }
+
+  /**
+   * Gets the shared catalog instance.
+   *
+   * @return The GrammarCatalog.
+   */
+  public static GrammarCatalog getInstance()
+  {
+    return instance;
+  }
+
+  /**
+   * Resolves the supplied grammar from the catalog.
+   *
+   * @param publicId The public id (may be null).
+   * @param systemId The system id.
+   * @return The uri of the local grammar or null if the grammar is not
+   * cataloged.
+   */
+  public String resolve(String publicId, String systemId)
+  {
+    load();
+
+    if (systemId != null){
+      String uri = systemIds.get(systemId);
+      if (uri != null){
+        return uri;
+      }
+
+      // longest matching prefix / suffix wins
+      String[] match = null;
+      synchronized(this){
+        for (String[] rewrite : rewrites){
+          if (systemId.startsWith(rewrite[0]) &&
+              (match == null || rewrite[0].length() > match[0].length()))
+          {
+            match = rewrite;
+          }
+        }
+        if (match != null){
+          return match[1] + systemId.substring(match[0].length());
+        }
+
+        // suffixes only apply to remote ids so that a local grammar which
+        // happens to share a cataloged name is never replaced.
+        boolean remote = systemId.startsWith("http://") ||
+          systemId.startsWith("https://");
+        for (String[] suffix : suffixes){
+          if (remote && systemId.endsWith(suffix[0]) &&
+              (match == null || suffix[0].length() > match[0].length()))
+          {
+            match = suffix;
+          }
+        }
+        if (match != null){
+          return match[1];
+        }
+      }
+    }
+
+    if (publicId != null){
+      return publicIds.get(publicId);
+    }
+    return null;
+  }
+
+  /**
+   * Gets the local copy of a remote grammar, downloading it if necessary.
+   *
+   * @param publicId The public id (may be null).
+   * @param systemId The http(s) system id.
+   * @return The local grammar file.
+   */
+  public File download(String publicId, String systemId)
+    throws IOException
+  {
+    IOException failure = failures.get(systemId);
+    if (failure != null){
+      throw failure;
+    }
+
+    File file = getLocalFile(systemId);
+    if (file.exists() && file.length() > 0){
+      return file;
+    }
+
+    synchronized(downloadLock){
+      // downloaded by another thread while waiting on the lock.
+      if (file.exists() && file.length() > 0){
+        return file;
+      }
+      fetch(systemId, file);
+    }
+
+    String uri = file.toURI().toString();
+    synchronized(this){
+      systemIds.put(systemId, uri);
+      downloads.put("system:" + systemId, uri);
+      if (publicId != null && !publicIds.containsKey(publicId)){
+        publicIds.put(publicId, uri);
+        downloads.put("public:" + publicId, uri);
+      }
+      saveDownloads();
+    }
+    return file;
+  }
+
+  /**
+   * Gets the remote system id of the supplied file if it is located in the
+   * downloaded grammars directory, allowing grammars included by a
+   * downloaded grammar using a relative path to be downloaded as well.
+   *
+   * @param file The local file.
+   * @return The remote system id or null if the file isn't in the downloaded
+   * grammars directory.
+   */
+  public String getRemoteId(File file)
+  {
+    String base = dir.getAbsolutePath().replace('\\', '/') + '/';
+    String path = file.getAbsolutePath().replace('\\', '/');
+    if (!path.startsWith(base)){
+      return null;
+    }
+    path = path.substring(base.length());
+    int index = path.indexOf('/');
+    if (index == -1){
+      return null;
+    }
+    String scheme = path.substring(0, index);
+    if (!"http".equals(scheme) && !"https".equals(scheme)){
+      return null;
+    }
+    return scheme + "://" + path.substring(index + 1);
+  }
+
+  private void fetch(String systemId, File file)
+    throws IOException
+  {
+    File temp = new File(file.getPath() + ".part");
+    InputStream in = null;
+    OutputStream out = null;
+    try{
+      file.getParentFile().mkdirs();
+      URLConnection conn = new URL(systemId).openConnection();
+      conn.setConnectTimeout(CONNECT_TIMEOUT);
+      conn.setReadTimeout(READ_TIMEOUT);
+      conn.connect();
+      in = conn.getInputStream();
+      out = new FileOutputStream(temp);
+      IOUtils.copy(in, out);
+      out.close();
+      if (!temp.renameTo(file) && !file.exists()){
+        throw new IOException("Unable to save grammar: " + file);
+      }
+    }catch(IOException ioe){
+      logger.warn(ioe.getMessage());
+      IOUtils.closeQuietly(out);
+      temp.delete();
+      failures.put(systemId, ioe);
+      throw ioe;
+    }finally{
+      IOUtils.closeQuietly(in);
+      IOUtils.closeQuietly(out);
+    }
+  }
+
+  private File getLocalFile(String systemId)
+    throws IOException
+  {
+    URI uri = null;
+    try{
+      uri = new URI(systemId);
+    }catch(URISyntaxException use){
+      throw new IOException("Unsupported system id: " + systemId);
+    }
+    String path = uri.getPath();
+    if (uri.getHost() == null || path == null || path.length() == 0){
+      throw new IOException("Unsupported system id: " + systemId);
+    }
+    if (uri.getQuery() != null){
+      path += '_' + uri.getQuery().replaceAll("[^\\w.-]", "_");
+    }
+    return new File(dir, uri.getScheme() + '/' + uri.getHost() +
+        (path.startsWith("/") ? "" : "/") + path);
+  }
+
+  private void load()
+  {
+    if (loaded){
+      return;
+    }
+    synchronized(this){
+      if (loaded){
+        return;
+      }
+      loaded = true;
+
+      LinkedList<String> catalogs = new LinkedList<String>();
+      // the user's catalog takes precedence over those shipped with eclim
+      // since entries loaded later overwrite those loaded earlier.
+      for (URL url : Services.getResources(SHIPPED_CATALOG)){
+        catalogs.add(url.toString());
+      }
+      String downloaded = new File(dir, DOWNLOADS_CATALOG).toURI().toString();
+      if (new File(dir, DOWNLOADS_CATALOG).exists()){
+        catalogs.add(downloaded);
+      }
+      File user = new File(dir, USER_CATALOG);
+      if (user.exists()){
+        catalogs.add(user.toURI().toString());
+      }
+
+      ArrayList<String> seen = new ArrayList<String>();
+      while (!catalogs.isEmpty()){
+        String catalog = catalogs.removeFirst();
+        if (seen.contains(catalog)){
+          continue;
+        }
+        seen.add(catalog);
+        try{
+          parse(catalog, catalogs, catalog.equals(downloaded));
+        }catch(Exception e){
+          logger.warn("Unable to load grammar catalog: " + catalog, e);
+        }
+      }
+      logger.debug("loaded grammar catalog: {} public, {} system ids",
+          publicIds.size(), systemIds.size());
+    }
+  }
+
+  private void parse(
+      final String catalog, final List<String> catalogs, final boolean downloaded)
+    throws Exception
+  {
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    factory.setValidating(false);
+    factory.newSAXParser().parse(catalog, new DefaultHandler(){
+      private LinkedList<URI> bases = new LinkedList<URI>();
+      {
+        bases.add(URI.create(catalog));
+      }
+
+      @Override
+      public void startElement(
+          String uri, String localName, String qName, Attributes attributes)
+        throws SAXException
+      {
+        URI base = bases.getLast();
+        String xmlBase = attributes.getValue(XML_NS, "base");
+        if (xmlBase != null){
+          base = base.resolve(xmlBase);
+        }
+        bases.add(base);
+
+        if (!CATALOG_NS.equals(uri)){
+          return;
+        }
+
+        if ("public".equals(localName)){
+          add(publicIds, "public:", attributes.getValue("publicId"),
+              resolve(base, attributes.getValue("uri")), downloaded);
+        }else if ("system".equals(localName)){
+          add(systemIds, "system:", attributes.getValue("systemId"),
+              resolve(base, attributes.getValue("uri")), downloaded);
+        }else if ("uri".equals(localName)){
+          add(systemIds, "system:", attributes.getValue("name"),
+              resolve(base, attributes.getValue("uri")), false);
+        }else if ("rewriteSystem".equals(localName)){
+          String prefix = resolve(base, attributes.getValue("rewritePrefix"));
+          String start = attributes.getValue("systemIdStartString");
+          if (start != null && prefix != null){
+            rewrites.add(new String[]{start, prefix});
+          }
+        }else if ("systemSuffix".equals(localName)){
+          String location = resolve(base, attributes.getValue("uri"));
+          String suffix = attributes.getValue("systemIdSuffix");
+          if (suffix != null && location != null){
+            suffixes.add(new String[]{suffix, location});
+          }
+        }else if ("nextCatalog".equals(localName)){
+          String next = resolve(base, attributes.getValue("catalog"));
+          if (next != null){
+            catalogs.add(next);
+          }
+        }
+      }
+
+      @Override
+      public void endElement(String uri, String localName, String qName)
+      {
+        bases.removeLast();
+      }
+
+      @Override
+      public InputSource resolveEntity(String publicId, String systemId)
+      {
+        // don't fetch the catalog dtd, if declared.
+        return new InputSource(new StringReader(""));
+      }
+    });
+  }
+
+  private void add(
+      Map<String,String> index,
+      String type,
+      String id,
+      String location,
+      boolean downloaded)
+  {
+    if (id == null || location == null){
+      return;
+    }
+    index.put(id, location);
+    if (downloaded){
+      downloads.put(type + id, location);
+    }
+  }
+
+  private String resolve(URI base, String location)
+  {
+    if (location == null || ABSOLUTE.matcher(location).lookingAt()){
+      return location;
+    }
+    // opaque uris (jar:file:...!/...) can't be resolved against.
+    if (base.isOpaque()){
+      String parent = base.toString();
+      return parent.substring(0, parent.lastIndexOf('/') + 1) + location;
+    }
+    return base.resolve(location).toString();
+  }
+
+  private void saveDownloads()
+  {
+    File file = new File(dir, DOWNLOADS_CATALOG);
+    File temp = new File(dir, DOWNLOADS_CATALOG + ".part");
+    PrintWriter out = null;
+    try{
+      dir.mkdirs();
+      out = new PrintWriter(
+          new OutputStreamWriter(new FileOutputStream(temp), "utf-8"));
+      out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      out.println("<!-- Grammars downloaded by eclim (generated file). -->");
+      out.println("<catalog xmlns=\"" + CATALOG_NS + "\">");
+      for (Map.Entry<String,String> entry : downloads.entrySet()){
+        String key = entry.getKey();
+        boolean system = key.startsWith("system:");
+        String id = key.substring(key.indexOf(':') + 1);
+        out.println("  <" + (system ? "system systemId" : "public publicId") +
+            "=\"" + StringEscapeUtils.escapeXml(id) + "\" uri=\"" +
+            StringEscapeUtils.escapeXml(entry.getValue()) + "\"/>");
+      }
+      out.println("</catalog>");
+      out.close();
+      if (!temp.renameTo(file)){
+        file.delete();
+        temp.renameTo(file);
+      }
+    }catch(IOException ioe){
+      logger.warn("Unable to save grammar catalog: " + file, ioe);
+    }finally{
+      if (out != null){
+        out.close();
+      }
+    }
+  }
+}
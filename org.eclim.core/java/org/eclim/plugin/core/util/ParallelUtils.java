@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utility methods for running command work in parallel on a shared pool of
+ * daemon worker threads sized to the number of available processors.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class ParallelUtils
+{
+  private static final int THREADS =
+    Math.max(Runtime.getRuntime().availableProcessors(), 2);
+
+  private static final ThreadLocal<Boolean> WORKER = new ThreadLocal<Boolean>();
+
+  private static ExecutorService executor;
+
+  /**
+   * Gets the number of worker threads available, which callers can use to
+   * decide how to partition their work.
+   *
+   * @return The number of worker threads.
+   */
+  public static int getThreadCount()
+  {
+    return THREADS;
+  }
+
+  /**
+   * Runs the supplied tasks in parallel, waiting for all of them to complete.
+   * <p/>
+   * When invoked from one of the pool's own worker threads the tasks are run
+   * sequentially on the current thread to avoid starving the pool.
+   *
+   * @param tasks The tasks to run.
+   * @return List containing the result of each task, in the order the tasks
+   * were supplied.
+   */
+  public static <T> List<T> invokeAll(Collection<? extends Callable<T>> tasks)
+    throws Exception
+  {
+    ArrayList<T> results = new ArrayList<T>(tasks.size());
+    if (tasks.size() < 2 || Boolean.TRUE.equals(WORKER.get())){
+      for (Callable<T> task : tasks){
+        results.add(task.call());
+      }
+      return results;
+    }
+
+    List<Future<T>> futures = getExecutor().invokeAll(tasks);
+    try{
+      for (Future<T> future : futures){
+        results.add(future.get());
+      }
+    }catch(ExecutionException ee){
+      Throwable cause = ee.getCause();
+      if (cause instanceof Exception){
+        throw (Exception)cause;
+      }
+      throw new RuntimeException(cause);
+    }finally{
+      for (Future<T> future : futures){
+        future.cancel(true);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Shuts down the worker pool, if started.
+   */
+  public static synchronized void shutdown()
+  {
+    if (executor != null){
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  private static synchronized ExecutorService getExecutor()
+  {
+    if (executor == null){
+      executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory(){
+        private AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(final Runnable runnable)
+        {
+          Thread thread = new Thread(new Runnable(){
+            public void run()
+            {
+              WORKER.set(Boolean.TRUE);
+              runnable.run();
+            }
+          }, "eclim-worker-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+}
@@ -18,32 +18,38 @@ package org.eclim.plugin.core.util;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 
 import java.net.URL;
-import java.net.URLConnection;
 import java.net.URLDecoder;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.ConcurrentHashMap;
 
 import java.util.regex.Pattern;
 
+import javax.xml.XMLConstants;
+
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
+import javax.xml.transform.stream.StreamSource;
+
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.ValidatorHandler;
+
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathFactory;
 
-import org.apache.commons.lang.SystemUtils;
-
-import org.apache.commons.vfs.FileObject;
-import org.apache.commons.vfs.FileSystemManager;
-import org.apache.commons.vfs.VFS;
-
 import org.eclim.Services;
 
 import org.eclim.command.Error;
@@ -52,8 +58,6 @@ import org.eclim.logging.Logger;
 
 import org.eclim.plugin.core.util.ProjectUtils;
 
-import org.eclim.util.IOUtils;
-
 import org.eclim.util.file.FileUtils;
 
 import org.w3c.dom.Element;
@@ -63,6 +67,7 @@ import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
 
 import org.xml.sax.helpers.DefaultHandler;
 
@@ -77,6 +82,23 @@ public class XmlUtils
 
   private static final Pattern WIN_BUG = Pattern.compile("^/[a-zA-Z]:/.*");
 
+  private static final String SCHEMA_VALIDATION =
+    "http://apache.org/xml/features/validation/schema";
+  private static final String SCHEMA_FULL_CHECKING =
+    "http://apache.org/xml/features/validation/schema-full-checking";
+
+  // parsers are not thread safe, but are reusable, so keep one per thread for
+  // each configuration.
+  private static final ThreadLocal<SAXParser> DTD_PARSER =
+    new ThreadLocal<SAXParser>();
+  private static final ThreadLocal<SAXParser> SCHEMA_PARSER =
+    new ThreadLocal<SAXParser>();
+  private static final ThreadLocal<SAXParser> PLAIN_PARSER =
+    new ThreadLocal<SAXParser>();
+
+  private static final Map<String,CachedSchema> SCHEMAS =
+    new ConcurrentHashMap<String,CachedSchema>();
+
   private static XPath XPATH;
 
   /**
@@ -140,16 +162,10 @@ public class XmlUtils
       DefaultHandler handler)
     throws Exception
   {
-    SAXParserFactory factory = SAXParserFactory.newInstance();
-    factory.setNamespaceAware(true);
-    factory.setValidating(true);
-    if(schema){
-      factory.setFeature("http://apache.org/xml/features/validation/schema", true);
-      factory.setFeature(
-          "http://apache.org/xml/features/validation/schema-full-checking", true);
-    }
-
-    SAXParser parser = factory.newSAXParser();
+    SAXParser parser = schema ?
+      getParser(SCHEMA_PARSER, true, true) :
+      getParser(DTD_PARSER, true, false);
+    GrammarPool.getInstance().checkStamps();
 
     filename = ProjectUtils.getFilePath(project, filename);
     filename = filename.replace('\\', '/');
@@ -188,26 +204,6 @@ public class XmlUtils
       String project, String filename, String schema)
     throws Exception
   {
-    SAXParserFactory factory = SAXParserFactory.newInstance();
-    factory.setNamespaceAware(true);
-    factory.setValidating(true);
-    factory.setFeature("http://apache.org/xml/features/validation/schema", true);
-    factory.setFeature(
-        "http://apache.org/xml/features/validation/schema-full-checking", true);
-
-    SAXParser parser = factory.newSAXParser();
-    parser.setProperty(
-        "http://java.sun.com/xml/jaxp/properties/schemaLanguage",
-        "http://www.w3.org/2001/XMLSchema");
-    if(!schema.startsWith("file:")){
-      schema = "file://" + schema;
-    }
-    parser.setProperty(
-        "http://java.sun.com/xml/jaxp/properties/schemaSource", schema);
-    parser.setProperty(
-        "http://apache.org/xml/properties/schema/external-noNamespaceSchemaLocation",
-        schema.replace('\\', '/'));
-
     filename = ProjectUtils.getFilePath(project, filename);
     filename = filename.replace('\\', '/');
 
@@ -215,8 +211,15 @@ public class XmlUtils
     EntityResolver entityResolver = new EntityResolver(
         FileUtils.getFullPath(filename));
     try{
-      parser.parse(new File(filename),
-          getHandler(null, errorHandler, entityResolver));
+      ValidatorHandler validator = getSchema(schema).newValidatorHandler();
+      validator.setErrorHandler(errorHandler);
+      validator.setContentHandler(getHandler(null, errorHandler, entityResolver));
+
+      XMLReader reader = getParser(PLAIN_PARSER, false, false).getXMLReader();
+      reader.setContentHandler(validator);
+      reader.setErrorHandler(errorHandler);
+      reader.setEntityResolver(entityResolver);
+      reader.parse(new InputSource(new File(filename).toURI().toString()));
     }catch(SAXParseException spe){
       ArrayList<Error> errors = new ArrayList<Error>();
       errors.add(
@@ -233,6 +236,75 @@ public class XmlUtils
     return errorHandler.getErrors();
   }
 
+  /**
+   * Gets this thread's parser for the supplied configuration, creating it if
+   * necessary.
+   *
+   * @param cache The thread local holding the parser.
+   * @param validating true for a validating parser.
+   * @param schema true to enable schema validation.
+   * @return The SAXParser.
+   */
+  private static SAXParser getParser(
+      ThreadLocal<SAXParser> cache, boolean validating, boolean schema)
+    throws Exception
+  {
+    SAXParser parser = cache.get();
+    if (parser == null){
+      SAXParserFactory factory = SAXParserFactory.newInstance();
+      factory.setNamespaceAware(true);
+      factory.setValidating(validating);
+      if(schema){
+        factory.setFeature(SCHEMA_VALIDATION, true);
+        factory.setFeature(SCHEMA_FULL_CHECKING, true);
+      }
+      parser = factory.newSAXParser();
+      if (validating){
+        GrammarPool.getInstance().install(parser);
+      }
+      cache.set(parser);
+    }
+    return parser;
+  }
+
+  /**
+   * Gets the compiled schema at the supplied location, compiling it if it
+   * hasn't been yet or if the schema file has been modified since.
+   *
+   * @param location The schema location.
+   * @return The Schema.
+   */
+  private static Schema getSchema(String location)
+    throws Exception
+  {
+    if(!location.startsWith("file:")){
+      location = "file://" + location;
+    }
+    location = location.replace('\\', '/');
+
+    long stamp = 0;
+    try{
+      stamp = new File(new URL(location).getPath()).lastModified();
+    }catch(Exception e){
+      logger.debug("Unable to stat schema: " + location, e);
+    }
+
+    CachedSchema cached = SCHEMAS.get(location);
+    if (cached == null || cached.stamp != stamp){
+      SchemaFactory factory =
+        SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+      try{
+        factory.setFeature(SCHEMA_FULL_CHECKING, true);
+      }catch(SAXException se){
+        // feature not supported by this implementation.
+      }
+      cached = new CachedSchema(
+          factory.newSchema(new StreamSource(location)), stamp);
+      SCHEMAS.put(location, cached);
+    }
+    return cached.schema;
+  }
+
   /**
    * Gets the value of a named child element.
    *
@@ -533,25 +605,13 @@ public class XmlUtils
   }
 
   /**
-   * EntityResolver extension.
+   * EntityResolver extension which resolves grammars via the
+   * {@link GrammarCatalog}.
    */
   private static class EntityResolver
     implements org.xml.sax.EntityResolver
   {
-    private static String TEMP_PREFIX =
-      "file://" + SystemUtils.JAVA_IO_TMPDIR.replace('\\', '/');
-    static{
-      if(TEMP_PREFIX.endsWith("\\") || TEMP_PREFIX.endsWith("/")){
-        TEMP_PREFIX = TEMP_PREFIX.substring(0, TEMP_PREFIX.length() - 1);
-      }
-    }
-
     private String path;
-    private String lastPath;
-
-    // cache missing sources to avoiding hitting the same url repeatedly
-    private static HashMap<String,IOException> missingSources =
-      new HashMap<String,IOException>();
 
     /**
      * Constructs a new instance.
@@ -573,92 +633,271 @@ public class XmlUtils
       // has a single letter directory, but that is doubtful.
       location = location.replaceFirst("^file://([a-zA-Z])/", "file://$1:/");
 
-      if(location.startsWith(TEMP_PREFIX)){
-        location = location.substring(TEMP_PREFIX.length());
-        return resolveEntity(publicId, lastPath + location);
-      }else if(location.startsWith("http://")){
-        if (missingSources.containsKey(systemId)){
-          throw missingSources.get(systemId);
-        }
-
-        int index = location.indexOf('/', 8);
-        lastPath = location.substring(0, index + 1);
-        location = location.substring(index);
-
-        location = TEMP_PREFIX + location;
-
-        FileSystemManager fsManager = VFS.getManager();
-        FileObject tempFile = fsManager.resolveFile(location);
-
-        // check if temp file already exists.
-        if(!tempFile.exists() || tempFile.getContent().getSize() == 0){
-          InputStream in = null;
-          OutputStream out = null;
-          try{
-            if(!tempFile.exists()){
-              tempFile.createFile();
-            }
-
-            // download and save remote file.
-            URL remote = new URL(systemId);
-            URLConnection conn = remote.openConnection();
-            conn.setConnectTimeout(3000);
-            conn.setReadTimeout(5000);
-            conn.connect();
-            in = conn.getInputStream();
-            out = tempFile.getContent().getOutputStream();
-            IOUtils.copy(in, out);
-          }catch(Exception e){
-            logger.warn(e.getMessage());
-            IOUtils.closeQuietly(out);
-            try{
-              tempFile.delete();
-            }catch(Exception ignore){
-            }
-
-            IOException ex = new IOException(e.getMessage());
-            ex.initCause(e);
-            missingSources.put(systemId, ex);
-            throw ex;
-          }finally{
-            IOUtils.closeQuietly(in);
-            IOUtils.closeQuietly(out);
-          }
-        }
+      GrammarCatalog catalog = GrammarCatalog.getInstance();
+      String cataloged = catalog.resolve(publicId, location);
+      if (cataloged != null){
+        location = cataloged;
+      }
 
-        InputSource source =
-          new InputSource(tempFile.getContent().getInputStream());
-        source.setSystemId(location);
-        return source;
+      if(location.startsWith("http://") || location.startsWith("https://")){
+        return source(catalog.download(publicId, location));
 
       }else if(location.startsWith("file:")){
         location = location.substring("file:".length());
         if(location.startsWith("//")){
           location = location.substring(2);
         }
+        if(location.indexOf('%') != -1){
+          location = URLDecoder.decode(location.replace("+", "%2B"), "utf-8");
+        }
         if (FileUtils.getFullPath(location).equals(
               FileUtils.getPath(location)))
         {
           location = FileUtils.concat(path, location);
         }
 
-        if(!new File(location).exists()){
-          StringBuffer resource = new StringBuffer()
-            .append("/resources/")
-            .append(FileUtils.getExtension(location))
-            .append('/')
-            .append(FileUtils.getFileName(location))
-            .append('.')
-            .append(FileUtils.getExtension(location));
-          URL url = Services.getResource(resource.toString());
-          if(url != null){
-            return new InputSource(url.toString());
-          }
+        File file = new File(location);
+        if(file.exists()){
+          GrammarPool.getInstance().track(file);
+          return new InputSource(location);
+        }
+
+        // relative include of a previously downloaded grammar
+        String remote = catalog.getRemoteId(file);
+        if(remote != null){
+          return source(catalog.download(null, remote));
+        }
+
+        StringBuffer resource = new StringBuffer()
+          .append("/resources/")
+          .append(FileUtils.getExtension(location))
+          .append('/')
+          .append(FileUtils.getFileName(location))
+          .append('.')
+          .append(FileUtils.getExtension(location));
+        URL url = Services.getResource(resource.toString());
+        if(url != null){
+          return new InputSource(url.toString());
         }
         return new InputSource(location);
       }
 
-      return new InputSource(systemId);
+      return new InputSource(location);
+    }
+
+    private InputSource source(File file)
+    {
+      return new InputSource(file.toURI().toString());
+    }
+  }
+
+  /**
+   * Compiled schema along with the modification stamp of its file.
+   */
+  private static class CachedSchema
+  {
+    public final Schema schema;
+    public final long stamp;
+
+    public CachedSchema(Schema schema, long stamp)
+    {
+      this.schema = schema;
+      this.stamp = stamp;
+    }
+  }
+
+  /**
+   * Grammar pool shared by all validating parsers, so that a dtd or schema is
+   * only read and compiled the first time a document referencing it is
+   * validated.
+   * <p/>
+   * The pool implements the xerces XMLGrammarPool interface via a dynamic
+   * proxy, since the xerces implementation backing jaxp (the jdk's internal
+   * copy or a standalone xerces) isn't known until runtime. Dtds are keyed by
+   * their public id, or system id if they have no public id, and schemas by
+   * their target namespace plus expanded location (schemas without a location
+   * are not pooled since their grammars can't be told apart). The pool is
+   * cleared whenever one of the local grammar files resolved while validating
+   * is modified.
+   */
+  private static class GrammarPool
+    implements InvocationHandler
+  {
+    private static final String GRAMMAR_POOL =
+      "http://apache.org/xml/properties/internal/grammar-pool";
+    private static final String XML_DTD = "http://www.w3.org/TR/REC-xml";
+    private static final String XML_SCHEMA = XMLConstants.W3C_XML_SCHEMA_NS_URI;
+
+    private static GrammarPool instance = new GrammarPool();
+
+    private Map<String,Object> grammars = new ConcurrentHashMap<String,Object>();
+    private Map<File,Long> files = new ConcurrentHashMap<File,Long>();
+
+    private Object proxy;
+    private boolean unsupported;
+    private Class<?> grammarClass;
+    private Method getGrammarDescription;
+    private Method getGrammarType;
+    private Method getPublicId;
+    private Method getExpandedSystemId;
+    private Class<?> schemaDescriptionClass;
+    private Method getTargetNamespace;
+
+    private GrammarPool()
+    {
+    }
+
+    public static GrammarPool getInstance()
+    {
+      return instance;
+    }
+
+    /**
+     * Installs the pool on the supplied parser, if the parser's
+     * implementation supports it.
+     *
+     * @param parser The parser.
+     */
+    public synchronized void install(SAXParser parser)
+    {
+      if (unsupported){
+        return;
+      }
+
+      try{
+        if (proxy == null){
+          String name = parser.getXMLReader().getClass().getName();
+          int index = name.indexOf(".xerces.");
+          if (index == -1){
+            throw new IllegalArgumentException("Not a xerces parser: " + name);
+          }
+          // org.apache.xerces. or the jdk's com.sun.org.apache.xerces.internal.
+          String prefix = name.substring(0, index + ".xerces.".length());
+          if (name.startsWith(prefix + "internal.")){
+            prefix += "internal.";
+          }
+          prefix += "xni.grammars.";
+          ClassLoader loader = parser.getXMLReader().getClass().getClassLoader();
+
+          Class<?> poolClass =
+            Class.forName(prefix + "XMLGrammarPool", true, loader);
+          Class<?> descriptionClass =
+            Class.forName(prefix + "XMLGrammarDescription", true, loader);
+          grammarClass = Class.forName(prefix + "Grammar", true, loader);
+          schemaDescriptionClass =
+            Class.forName(prefix + "XMLSchemaDescription", true, loader);
+          getGrammarDescription = grammarClass.getMethod("getGrammarDescription");
+          getGrammarType = descriptionClass.getMethod("getGrammarType");
+          getPublicId = descriptionClass.getMethod("getPublicId");
+          getExpandedSystemId = descriptionClass.getMethod("getExpandedSystemId");
+          getTargetNamespace =
+            schemaDescriptionClass.getMethod("getTargetNamespace");
+
+          proxy = Proxy.newProxyInstance(loader, new Class[]{poolClass}, this);
+        }
+        parser.setProperty(GRAMMAR_POOL, proxy);
+      }catch(Exception e){
+        logger.debug("Grammar pool not supported by parser.", e);
+        unsupported = true;
+      }
+    }
+
+    /**
+     * Records the current modification stamp of a local grammar file.
+     *
+     * @param file The grammar file.
+     */
+    public void track(File file)
+    {
+      if (!files.containsKey(file)){
+        files.put(file, file.lastModified());
+      }
+    }
+
+    /**
+     * Clears the pool if any tracked grammar file has been modified.
+     */
+    public void checkStamps()
+    {
+      for (Map.Entry<File,Long> entry : files.entrySet()){
+        if (entry.getKey().lastModified() != entry.getValue().longValue()){
+          logger.debug("grammar modified, clearing pool: {}", entry.getKey());
+          files.clear();
+          grammars.clear();
+          return;
+        }
+      }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+      throws Throwable
+    {
+      String name = method.getName();
+      if ("retrieveGrammar".equals(name)){
+        String key = key(args[0]);
+        return key != null ? grammars.get(key) : null;
+      }else if ("cacheGrammars".equals(name)){
+        for (Object grammar : (Object[])args[1]){
+          String key = key(grammar);
+          if (key != null){
+            grammars.put(key, grammar);
+          }
+        }
+        return null;
+      }else if ("retrieveInitialGrammarSet".equals(name)){
+        return Array.newInstance(grammarClass, 0);
+      }else if ("clear".equals(name)){
+        grammars.clear();
+        return null;
+      }else if ("equals".equals(name)){
+        return proxy == args[0];
+      }else if ("hashCode".equals(name)){
+        return System.identityHashCode(proxy);
+      }else if ("toString".equals(name)){
+        return GrammarPool.class.getName();
+      }
+      // lockPool, unlockPool
+      return null;
+    }
+
+    private String key(Object object)
+    {
+      if (object == null || unsupported){
+        return null;
+      }
+
+      try{
+        Object description = grammarClass.isInstance(object) ?
+          getGrammarDescription.invoke(object) : object;
+        String type = (String)getGrammarType.invoke(description);
+        if (XML_DTD.equals(type)){
+          String id = (String)getPublicId.invoke(description);
+          if (id == null){
+            id = (String)getExpandedSystemId.invoke(description);
+          }
+          return id != null ? "dtd:" + id : null;
+        }
+
+        if (XML_SCHEMA.equals(type) &&
+            schemaDescriptionClass.isInstance(description))
+        {
+          // several versions of a schema commonly share a namespace (javaee
+          // web-app 2.5 vs 3.0, spring-beans 2.5 vs 3.x, etc), so the
+          // location must be part of the key as well.
+          String location = (String)getExpandedSystemId.invoke(description);
+          if (location == null){
+            return null;
+          }
+          String namespace = (String)getTargetNamespace.invoke(description);
+          return "xsd:" + (namespace != null ? namespace : "") + ' ' + location;
+        }
+      }catch(Exception e){
+        // grammar classes not accessible, fall back to not pooling at all.
+        logger.debug("Grammar pool not supported by parser.", e);
+        unsupported = true;
+      }
+      return null;
     }
   }
 }
@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.complete;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for CodeCompleteProposals.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class CodeCompleteProposalsTest
+{
+  private static final CodeCompleteProposals.InfoResolver RESOLVER =
+    new CodeCompleteProposals.InfoResolver(){
+      public String getInfo(Object proposal){
+        return proposal.toString();
+      }
+    };
+
+  @Test
+  public void retain()
+    throws Exception
+  {
+    long retained = CodeCompleteProposals.register(
+        RESOLVER, new Object[]{"retained"});
+    CodeCompleteProposals.retain(retained);
+    long evicted = CodeCompleteProposals.register(
+        RESOLVER, new Object[]{"evicted"});
+
+    for (int ii = 0; ii < 10; ii++){
+      CodeCompleteProposals.register(RESOLVER, new Object[]{"other"});
+    }
+
+    String id = CodeCompleteProposals.getId(retained, 0);
+    assertEquals("retained", CodeCompleteProposals.getInfo(id));
+    assertNull(CodeCompleteProposals.getInfo(
+          CodeCompleteProposals.getId(evicted, 0)));
+
+    CodeCompleteProposals.release(retained);
+    for (int ii = 0; ii < 10; ii++){
+      CodeCompleteProposals.register(RESOLVER, new Object[]{"other"});
+    }
+    assertNull(CodeCompleteProposals.getInfo(id));
+  }
+}
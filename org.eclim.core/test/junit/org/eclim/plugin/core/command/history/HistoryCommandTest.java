@@ -20,6 +20,7 @@ import java.io.BufferedWriter;
 import java.io.FileOutputStream;
 import java.io.OutputStreamWriter;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -111,5 +112,16 @@ public class HistoryCommandTest
       "-r", results.get(1).get("timestamp").toString()
     });
     assertEquals("Wrong result.", result, "line 1\n");
+
+    List<Map<String,Object>> hunks = (List<Map<String,Object>>)
+      Eclim.execute(new String[]{
+        "history_diff", "-p", Eclim.TEST_PROJECT, "-f", TEST_FILE,
+        "-r", results.get(1).get("timestamp").toString()
+      });
+    assertEquals(1, hunks.size());
+    assertEquals("@@ -1,1 +1,2 @@", hunks.get(0).get("header"));
+    assertEquals(
+        Arrays.asList(new String[]{" line 1", "+line 2"}),
+        hunks.get(0).get("lines"));
   }
 }
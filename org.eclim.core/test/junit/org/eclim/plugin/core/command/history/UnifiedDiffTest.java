@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.history;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for UnifiedDiff.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class UnifiedDiffTest
+{
+  @Test
+  public void diff()
+  {
+    String[] original = new String[]{"a", "b", "c", "d", "e", "f", "g", "h"};
+    String[] revised = new String[]{"a", "c", "d", "e", "x", "f", "g", "h"};
+    List<UnifiedDiff.Hunk> hunks = UnifiedDiff.diff(original, revised, 1);
+    assertEquals(2, hunks.size());
+    assertEquals("@@ -1,3 +1,2 @@", hunks.get(0).getHeader());
+    assertEquals(
+        Arrays.asList(new String[]{" a", "-b", " c"}),
+        hunks.get(0).getLines());
+    assertEquals("@@ -5,2 +4,3 @@", hunks.get(1).getHeader());
+    assertEquals(
+        Arrays.asList(new String[]{" e", "+x", " f"}),
+        hunks.get(1).getLines());
+
+    assertEquals(0, UnifiedDiff.diff(original, original, 3).size());
+  }
+
+  @Test
+  public void diffRewritten()
+  {
+    // a large, mostly rewritten file must diff in bounded memory and time.
+    int size = 20000;
+    String[] original = new String[size];
+    String[] revised = new String[size];
+    for (int ii = 0; ii < size; ii++){
+      original[ii] = "line " + ii;
+      revised[ii] = ii % 10 == 0 ? original[ii] : "changed " + ii;
+    }
+
+    // context spanning the whole file yields a single hunk holding both.
+    List<UnifiedDiff.Hunk> hunks = UnifiedDiff.diff(original, revised, size);
+    assertEquals(1, hunks.size());
+    assertEquals("@@ -1,20000 +1,20000 @@", hunks.get(0).getHeader());
+
+    ArrayList<String> originalLines = new ArrayList<String>();
+    ArrayList<String> revisedLines = new ArrayList<String>();
+    for (String line : hunks.get(0).getLines()){
+      if (line.charAt(0) != '+'){
+        originalLines.add(line.substring(1));
+      }
+      if (line.charAt(0) != '-'){
+        revisedLines.add(line.substring(1));
+      }
+    }
+    assertEquals(Arrays.asList(original), originalLines);
+    assertEquals(Arrays.asList(revised), revisedLines);
+  }
+}
@@ -18,6 +18,7 @@ package org.eclim.plugin.core.command.problems;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclim.Eclim;
 
@@ -54,4 +55,33 @@ public class ProblemsCommandTest
 
     assertTrue(results.contains(error));
   }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void since()
+  {
+    // close and re-open the project so that the request below has to index
+    // it from scratch.
+    Eclim.execute(new String[]{"project_close", "-p", TEST_PROJECT});
+    Eclim.execute(new String[]{"project_open", "-p", TEST_PROJECT});
+    Eclim.execute(new String[]{"project_build", "-p", TEST_PROJECT});
+
+    Map<String,Object> results = (Map<String,Object>)Eclim.execute(new String[]{
+      "problems", "-p", TEST_PROJECT, "-s", "0"
+    });
+
+    String file =
+      Eclim.getWorkspace() + "/" + TEST_PROJECT + "/src/org/eclim/test/Test.java";
+    List<String> files = (List<String>)results.get("files");
+    assertTrue(files.contains(file));
+    assertFalse(((List<Object>)results.get("problems")).isEmpty());
+
+    // nothing has changed since the last request
+    long version = ((Number)results.get("version")).longValue();
+    results = (Map<String,Object>)Eclim.execute(new String[]{
+      "problems", "-p", TEST_PROJECT, "-s", String.valueOf(version)
+    });
+    assertEquals(0, ((List<String>)results.get("files")).size());
+    assertEquals(0, ((List<Object>)results.get("problems")).size());
+  }
 }
@@ -77,6 +77,31 @@ public class ProjectCommandsTest
     assertTrue("Project not opened.", projectOpen());
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void listProjectsByPrefix()
+  {
+    assertTrue("Project not created.", Eclim.projectExists(TEST_PROJECT));
+
+    List<Map<String,Object>> projects = (List<Map<String,Object>>)
+      Eclim.execute(new String[]{"projects", "-x", "unit_test_c"});
+    assertEquals(1, projects.size());
+    assertEquals(TEST_PROJECT, projects.get(0).get("name"));
+
+    projects = (List<Map<String,Object>>)
+      Eclim.execute(new String[]{"project_list", "-x", "unit_test_c"});
+    assertEquals(1, projects.size());
+    assertEquals(TEST_PROJECT, projects.get(0).get("name"));
+
+    projects = (List<Map<String,Object>>)
+      Eclim.execute(new String[]{"projects", "-l", "1"});
+    assertEquals(1, projects.size());
+
+    projects = (List<Map<String,Object>>)
+      Eclim.execute(new String[]{"projects", "-x", "unit_test_c", "-o", "1"});
+    assertEquals(0, projects.size());
+  }
+
   @Test
   public void renameProject()
   {
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.core.command.search;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for FileIndex.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class FileIndexTest
+{
+  @Test
+  public void requiredMask()
+  {
+    assertTrue(matches("foo", "Foo.java"));
+    assertFalse(matches("foo", "Bar.java"));
+    assertFalse(matches("foo\\.java", "Foo.txt"));
+
+    // escapes which are classes or character codes aren't literals.
+    assertTrue(matches("\\p{Lu}oo", "Foo.java"));
+    assertTrue(matches("\\pLoo", "Foo.java"));
+    assertTrue(matches("\\x41bc", "Abc.java"));
+    assertTrue(matches("\\x{41}bc", "Abc.java"));
+    assertTrue(matches("\\u0041bc", "Abc.java"));
+    assertTrue(matches("\\0101bc", "Abc.java"));
+
+    // quantifier bounds aren't literals.
+    assertTrue(matches("foo\\d{3}", "Foo456.java"));
+    assertTrue(matches("a{2,}b", "aab.java"));
+    assertTrue(matches("ab{1,2}c", "abc.java"));
+  }
+
+  private boolean matches(String regex, String name)
+  {
+    return (FileIndex.requiredMask(regex) & ~FileIndex.mask(name)) == 0;
+  }
+}
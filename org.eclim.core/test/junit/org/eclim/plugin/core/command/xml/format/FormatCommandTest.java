@@ -49,5 +49,16 @@ public class FormatCommandTest
     assertEquals("  <one>one</one>", lines[2]);
     assertEquals("  <two/>", lines[3]);
     assertEquals("</blah>", lines[4]);
+
+    result = (String)Eclim.execute(new String[]{
+      "xml_format",
+      "-f", Eclim.resolveFile(TEST_FILE), "-w", "80", "-i", "2", "-m", "dos"
+    });
+
+    lines = StringUtils.split(result, '\n');
+
+    assertEquals("Wrong number of lines.", 5, lines.length);
+    assertEquals("  <one>one</one>\r", lines[2]);
+    assertEquals("</blah>\r", lines[4]);
   }
 }
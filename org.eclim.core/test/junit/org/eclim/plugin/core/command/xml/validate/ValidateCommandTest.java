@@ -25,6 +25,8 @@ import org.junit.Test;
 
 import static org.junit.Assert.*;
 
+import com.google.gson.JsonParser;
+
 /**
  * Test ValidateCommand.
  *
@@ -63,4 +65,37 @@ public class ValidateCommandTest
     assertEquals(error.get("column"), 9);
     assertEquals(error.get("warning"), false);
   }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void project()
+  {
+    // each file's errors are streamed on their own line, ending with an empty
+    // list.
+    String output = (String)Eclim.execute(new String[]{
+      "xml_validate_project", "-p", Eclim.TEST_PROJECT,
+      "-i", "xml/**/*.xml", "-e", "xml/**/*format*.xml"
+    }, false);
+    String[] lines = output.split("\n");
+    assertEquals("[]", lines[lines.length - 1]);
+
+    JsonParser parser = new JsonParser();
+    Map<String,Object> result = null;
+    for (int ii = 0; ii < lines.length - 1; ii++){
+      List<Map<String,Object>> results = (List<Map<String,Object>>)
+        Eclim.toType(parser.parse(lines[ii]));
+      assertEquals(1, results.size());
+      Map<String,Object> r = results.get(0);
+      assertTrue(((String)r.get("file")).startsWith("xml/"));
+      if (TEST_FILE.equals(r.get("file"))){
+        result = r;
+      }
+    }
+    assertNotNull("Missing validation results for " + TEST_FILE, result);
+
+    List<Map<String,Object>> errors = (List<Map<String,Object>>)result.get("errors");
+    assertEquals("Wrong number of errors.", 2, errors.size());
+    assertEquals(errors.get(0).get("line"), 12);
+    assertEquals(errors.get(1).get("line"), 13);
+  }
 }
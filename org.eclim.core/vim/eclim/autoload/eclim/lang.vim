@@ -441,7 +441,8 @@ endfunction " }}}
 " Executes the supplied refactor preview command and opens a corresponding
 " window to view that preview.
 function! eclim#lang#RefactorPreview(command)
-  let result = eclim#Execute(a:command)
+  " request the preview of every changed file up front.
+  let result = eclim#Execute(a:command . ' -a')
   if type(result) != g:DICT_TYPE
     return
   endif
@@ -453,9 +454,13 @@ function! eclim#lang#RefactorPreview(command)
   endif
 
   let lines = []
+  let previews = {}
   for change in result.changes
     if change.type == 'diff'
       call add(lines, '|diff|: ' . change.file)
+      if has_key(change, 'preview')
+        let previews[change.file] = change.preview
+      endif
     else
       call add(lines, change.type . ': ' . change.message)
     endif
@@ -465,6 +470,11 @@ function! eclim#lang#RefactorPreview(command)
   call add(lines, '|Execute Refactoring|')
   call eclim#util#TempWindow('[Refactor Preview]', lines)
   let b:refactor_command = result.apply
+  let b:refactor_previews = previews
+  " reuse the refactoring computed for this preview when possible.
+  if has_key(result, 'session')
+    let b:refactor_command .= ' -s "' . result.session . '"'
+  endif
 
   set ft=refactor_preview
   hi link RefactorLabel Identifier
@@ -504,9 +514,12 @@ function! eclim#lang#RefactorPreviewLink()
 
     elseif line =~ '^|diff|'
       let file = substitute(line, '^|diff|:\s*', '', '')
-      let command .= ' -v -d "' . file . '"'
-
-      let diff = eclim#Execute(command)
+      if has_key(b:refactor_previews, file)
+        let diff = b:refactor_previews[file]
+      else
+        let command .= ' -v -d "' . file . '"'
+        let diff = eclim#Execute(command)
+      endif
       if type(diff) != g:STRING_TYPE
         return
       endif
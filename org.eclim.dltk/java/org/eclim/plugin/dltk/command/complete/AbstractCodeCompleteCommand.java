@@ -21,13 +21,18 @@ import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.Locale;
 
+import org.apache.commons.lang.StringUtils;
+
 import org.eclim.command.CommandLine;
 import org.eclim.command.Options;
 
 import org.eclim.plugin.core.command.AbstractCommand;
 
+import org.eclim.plugin.core.command.complete.CodeCompleteMatcher;
+import org.eclim.plugin.core.command.complete.CodeCompleteProposals;
 import org.eclim.plugin.core.command.complete.CodeCompleteResult;
 
 import org.eclim.plugin.core.util.ProjectUtils;
@@ -75,17 +80,42 @@ public abstract class AbstractCodeCompleteCommand
       collector.getScriptCompletionProposals();
     Arrays.sort(proposals, new ScriptCompletionProposalComparator());
 
-    ArrayList<CodeCompleteResult> results = new ArrayList<CodeCompleteResult>();
-    for (IScriptCompletionProposal proposal : proposals){
-      CodeCompleteResult ccresult = new CodeCompleteResult(
-          getCompletion(proposal), getMenu(proposal), getInfo(proposal));
+    CodeCompleteMatcher matcher = new CodeCompleteMatcher(
+        commandLine.getValue(Options.PREFIX_OPTION));
+    int limit = commandLine.getIntValue(Options.MAX_RESULTS_OPTION);
+    boolean deferInfo = commandLine.hasOption(Options.DEFER_INFO_OPTION);
+
+    long key = CodeCompleteProposals.register(
+        new CodeCompleteProposals.InfoResolver(){
+          public String getInfo(Object proposal){
+            return AbstractCodeCompleteCommand.this
+              .getInfo((IScriptCompletionProposal)proposal);
+          }
+        }, proposals);
+
+    // proposals are sorted by relevance, so the limit keeps the most relevant.
+    LinkedHashSet<CodeCompleteResult> results =
+      new LinkedHashSet<CodeCompleteResult>();
+    for (int ii = 0; ii < proposals.length; ii++){
+      IScriptCompletionProposal proposal = proposals[ii];
+      if (limit > 0 && results.size() >= limit){
+        break;
+      }
 
-      if(!results.contains(ccresult)){
-        results.add(ccresult);
+      String completion = getCompletion(proposal);
+      if (!matcher.matches(completion)){
+        continue;
       }
+
+      CodeCompleteResult result = new CodeCompleteResult(
+          completion,
+          getMenu(proposal),
+          deferInfo ? StringUtils.EMPTY : getInfo(proposal));
+      result.setId(CodeCompleteProposals.getId(key, ii));
+      results.add(result);
     }
 
-    return results;
+    return new ArrayList<CodeCompleteResult>(results);
   }
 
   /**
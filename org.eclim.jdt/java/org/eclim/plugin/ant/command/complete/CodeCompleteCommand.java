@@ -16,6 +16,8 @@
  */
 package org.eclim.plugin.ant.command.complete;
 
+import org.apache.commons.lang.StringUtils;
+
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 
@@ -44,7 +46,10 @@ import org.eclipse.jface.text.contentassist.IContentAssistProcessor;
     "REQUIRED p project ARG," +
     "REQUIRED f file ARG," +
     "REQUIRED o offset ARG," +
-    "REQUIRED e encoding ARG"
+    "REQUIRED e encoding ARG," +
+    "OPTIONAL x prefix ARG," +
+    "OPTIONAL m limit ARG," +
+    "OPTIONAL d deferinfo NOARG"
 )
 public class CodeCompleteCommand
   extends AbstractCodeCompleteCommand
@@ -58,7 +63,9 @@ public class CodeCompleteCommand
       ICompletionProposal proposal)
   {
     return new AntCodeCompleteResult(
-        getCompletion(proposal), getMenu(proposal), getInfo(proposal));
+        getCompletion(proposal),
+        getMenu(proposal),
+        isInfoDeferred() ? StringUtils.EMPTY : getInfo(proposal));
   }
 
   /**
@@ -36,16 +36,23 @@ import org.eclim.logging.Logger;
 
 import org.eclim.plugin.AbstractPluginResources;
 
+import org.eclim.plugin.core.command.complete.FileWarmup;
+
 import org.eclim.plugin.core.preference.PreferenceFactory;
 import org.eclim.plugin.core.preference.Preferences;
 
 import org.eclim.plugin.core.project.ProjectManagement;
 import org.eclim.plugin.core.project.ProjectNatureFactory;
 
+import org.eclim.plugin.jdt.command.complete.JavaFileWarmer;
+
 import org.eclim.plugin.jdt.preference.OptionHandler;
 
 import org.eclim.plugin.jdt.project.JavaProjectManager;
 
+import org.eclim.plugin.jdt.util.SearchScopes;
+import org.eclim.plugin.jdt.util.SourceIndex;
+
 import org.eclim.util.IOUtils;
 import org.eclim.util.StringUtils;
 
@@ -54,6 +61,7 @@ import org.eclim.util.file.FileUtils;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
 
+import org.eclipse.jdt.core.ElementChangedEvent;
 import org.eclipse.jdt.core.JavaCore;
 
 import org.eclipse.jdt.launching.IVMInstall;
@@ -106,6 +114,11 @@ public class PluginResources
     Preferences.addOptionHandler("org.eclipse.jdt", new OptionHandler());
     ProjectNatureFactory.addNature("java", NATURE);
     ProjectManagement.addProjectManager(NATURE, new JavaProjectManager());
+    FileWarmup.addWarmer("java", new JavaFileWarmer());
+    JavaCore.addElementChangedListener(
+        SearchScopes.getChangeListener(), ElementChangedEvent.POST_CHANGE);
+    JavaCore.addElementChangedListener(
+        SourceIndex.getChangeListener(), ElementChangedEvent.POST_CHANGE);
 
     PreferenceFactory.addPreferences(NATURE,
       "JDT org.eclim.java.logging.impl commons-logging " +
@@ -17,8 +17,12 @@
 package org.eclim.plugin.jdt.command.complete;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 import org.eclim.annotation.Command;
 
@@ -26,8 +30,12 @@ import org.eclim.command.CommandLine;
 import org.eclim.command.Options;
 
 import org.eclim.plugin.core.command.complete.AbstractCodeCompleteCommand;
+import org.eclim.plugin.core.command.complete.CodeCompleteMatcher;
+import org.eclim.plugin.core.command.complete.CodeCompleteProposals;
 import org.eclim.plugin.core.command.complete.CodeCompleteResult;
 
+import org.eclim.plugin.core.util.ProjectUtils;
+
 import org.eclim.plugin.jdt.util.JavaUtils;
 
 import org.eclipse.jdt.core.CompletionProposal;
@@ -38,6 +46,8 @@ import org.eclipse.jdt.internal.ui.text.java.LazyJavaCompletionProposal;
 
 import org.eclipse.jdt.ui.text.java.IJavaCompletionProposal;
 
+import org.eclipse.jface.text.IDocument;
+
 /**
  * Command to handle java code completion requests.
  *
@@ -50,7 +60,9 @@ import org.eclipse.jdt.ui.text.java.IJavaCompletionProposal;
     "REQUIRED f file ARG," +
     "REQUIRED o offset ARG," +
     "REQUIRED e encoding ARG," +
-    "REQUIRED l layout ARG"
+    "REQUIRED l layout ARG," +
+    "OPTIONAL x prefix ARG," +
+    "OPTIONAL m limit ARG"
 )
 public class CodeCompleteCommand
   extends AbstractCodeCompleteCommand
@@ -71,28 +83,147 @@ public class CodeCompleteCommand
     String file = commandLine.getValue(Options.FILE_OPTION);
     int offset = getOffset(commandLine);
 
+    String prefix = commandLine.getValue(Options.PREFIX_OPTION);
+    CompletionSession session = getSession(project, file, offset, prefix);
+
+    CodeCompleteMatcher matcher = new CodeCompleteMatcher(prefix);
+    int limit = commandLine.getIntValue(Options.MAX_RESULTS_OPTION);
+    boolean compact = COMPACT.equals(commandLine.getValue(Options.LAYOUT_OPTION));
+
+    LinkedHashSet<CodeCompleteResult> unique =
+      new LinkedHashSet<CodeCompleteResult>();
+    HashSet<String> kept = new HashSet<String>();
+    for(CodeCompleteResult result : session.getResults()){
+      if(!matcher.matches(result.getCompletion())){
+        continue;
+      }
+
+      if(limit > 0){
+        // the compact layout merges overloaded methods into one result, so
+        // count them as such.
+        String key = compact ?
+          result.getType() + ':' + result.getCompletion() :
+          result.getCompletion() + ':' + result.getMenu();
+        if(kept.size() >= limit && !kept.contains(key)){
+          continue;
+        }
+        kept.add(key);
+      }
+      unique.add(result);
+    }
+
+    ArrayList<CodeCompleteResult> results =
+      new ArrayList<CodeCompleteResult>(unique);
+    Collections.sort(results, COMPLETION_COMPARATOR);
+
+    if(compact && results.size() > 0){
+      results = compact(results);
+    }
+
+    return new CodeCompleteResponse(
+        results, session.getError(), session.getImports());
+  }
+
+  /**
+   * Gets the completion session for the supplied offset, reusing the current
+   * session when the user has only continued typing the identifier it was
+   * created for, otherwise running code completion and starting a new one.
+   *
+   * @param project The project name.
+   * @param file The project relative file path.
+   * @param offset The offset in the file.
+   * @param prefix The portion of the identifier already typed (may be null).
+   * @return The CompletionSession.
+   */
+  protected CompletionSession getSession(
+      String project, String file, int offset, String prefix)
+    throws Exception
+  {
+    // the session is only usable if the prefix is the identifier typed up to
+    // the offset.
+    String contents = null;
+    int anchor = offset - (prefix != null ? prefix.length() : 0);
+    if (anchor >= 0){
+      IDocument document = ProjectUtils.getDocument(project, file);
+      contents = document != null ? document.get() : null;
+      if (contents != null && prefix != null && prefix.length() > 0){
+        if (!contents.regionMatches(anchor, prefix, 0, prefix.length())){
+          contents = null;
+        }else{
+          for (int ii = 0; ii < prefix.length(); ii++){
+            if (!Character.isJavaIdentifierPart(prefix.charAt(ii))){
+              contents = null;
+              break;
+            }
+          }
+        }
+      }
+    }
+
+    if (contents != null){
+      CompletionSession session =
+        CompletionSession.get(project, file, contents, anchor, offset);
+      if (session != null){
+        return session;
+      }
+    }
+
     ICompilationUnit src = JavaUtils.getCompilationUnit(project, file);
 
     CompletionProposalCollector collector =
       new CompletionProposalCollector(src);
     src.codeComplete(offset, collector);
 
-    IJavaCompletionProposal[] proposals =
+    final IJavaCompletionProposal[] proposals =
       collector.getJavaCompletionProposals();
-    ArrayList<CodeCompleteResult> results = new ArrayList<CodeCompleteResult>();
+
+    // order the results by relevance so that any limit keeps the most relevant
+    // ones (Arrays.sort is stable so ties retain their order).
+    Integer[] order = new Integer[proposals.length];
     for(int ii = 0; ii < proposals.length; ii++){
-      results.add(
-          createCompletionResult(collector, ii, proposals[ii]));
+      order[ii] = ii;
     }
-    Collections.sort(results, COMPLETION_COMPARATOR);
+    Arrays.sort(order, new Comparator<Integer>(){
+      public int compare(Integer i1, Integer i2){
+        return proposals[i2].getRelevance() - proposals[i1].getRelevance();
+      }
+    });
 
-    String layout = commandLine.getValue(Options.LAYOUT_OPTION);
-    if(COMPACT.equals(layout) && results.size() > 0){
-      results = compact(results);
+    // the javadoc of a proposal is expensive to compute, so it is only
+    // resolved when requested via the completion_info command.
+    long key = CodeCompleteProposals.register(
+        new CodeCompleteProposals.InfoResolver(){
+          public String getInfo(Object proposal){
+            IJavaCompletionProposal javaProposal =
+              (IJavaCompletionProposal)proposal;
+            String info = javaProposal.getAdditionalProposalInfo();
+            return info != null ? info.trim() : javaProposal.getDisplayString();
+          }
+        }, proposals);
+
+    ArrayList<CodeCompleteResult> results = new ArrayList<CodeCompleteResult>();
+    for(int index : order){
+      CodeCompleteResult result =
+        createCompletionResult(collector, index, proposals[index]);
+      result.setId(CodeCompleteProposals.getId(key, index));
+      results.add(result);
     }
 
-    return new CodeCompleteResponse(
-        results, collector.getError(), collector.getImports());
+    CompletionSession session = new CompletionSession(
+        project, file, contents, anchor, offset,
+        results, key, collector.getError(), collector.getImports());
+
+    // with no prefix jdt omits some proposals (types for instance), so only
+    // keep results computed for a prefix. missing imports will be added to the
+    // file before completing again, so there is no point in keeping those
+    // results around either.
+    List<String> imports = collector.getImports();
+    if (contents != null && offset > anchor &&
+        (imports == null || imports.isEmpty()))
+    {
+      CompletionSession.set(session);
+    }
+    return session;
   }
 
   /**
@@ -162,13 +293,9 @@ public class CodeCompleteCommand
         break;
     }
 
-    // TODO:
-    // hopefully Bram will take my advice to add lazy retrieval of
-    // completion 'info' so that I can provide this text without the
-    // overhead involved with retrieving it for every completion regardless
-    // of whether the user ever views it.
-    /*return new CodeCompleteResult(
-        kind, completion, menu, proposal.getAdditionalProposalInfo());*/
+    // retrieving the javadoc for every completion is too expensive, so the
+    // info is just the menu text and clients can retrieve the javadoc of a
+    // single result using its id and the completion_info command.
     return new CodeCompleteResult(completion, menu, menu, type);
   }
 }
@@ -25,6 +25,8 @@ import org.eclim.plugin.jdt.command.include.ImportUtils;
 
 import org.eclim.plugin.jdt.command.search.SearchRequestor;
 
+import org.eclim.plugin.jdt.util.SearchScopes;
+
 import org.eclim.util.file.FileOffsets;
 
 import org.eclipse.core.resources.IProject;
@@ -132,8 +134,7 @@ public class CompletionProposalCollector
               IJavaSearchConstants.TYPE,
               IJavaSearchConstants.DECLARATIONS,
               SearchPattern.R_EXACT_MATCH | SearchPattern.R_CASE_SENSITIVE);
-        IJavaSearchScope scope =
-          SearchEngine.createJavaSearchScope(new IJavaElement[]{javaProject});
+        IJavaSearchScope scope = SearchScopes.getProjectScope(javaProject);
         SearchRequestor requestor = new SearchRequestor();
         SearchEngine engine = new SearchEngine();
         SearchParticipant[] participants =
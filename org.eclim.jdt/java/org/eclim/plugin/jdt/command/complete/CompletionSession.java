@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.jdt.command.complete;
+
+import java.util.List;
+
+import org.eclim.command.Error;
+
+import org.eclim.plugin.core.command.complete.CodeCompleteProposals;
+import org.eclim.plugin.core.command.complete.CodeCompleteResult;
+
+/**
+ * Holds the results of the most recent java completion so that requests made
+ * while the user continues to type the same identifier can be answered by
+ * filtering those results rather than running code completion again.
+ * <p/>
+ * A session is keyed by the file, the offset where the identifier being
+ * completed starts (the anchor), and the contents of the file around that
+ * identifier. Any edit outside of the identifier, or any change to the
+ * identifier other than appending to it, invalidates the session.
+ * <p/>
+ * Since the results of a session carry the ids of the proposals registered
+ * with {@link CodeCompleteProposals} when the session was created, those
+ * proposals are retained for as long as the session is current.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class CompletionSession
+{
+  private static CompletionSession current;
+
+  private String project;
+  private String file;
+  private String contents;
+  private int anchor;
+  private int end;
+  private List<CodeCompleteResult> results;
+  private long proposals;
+  private Error error;
+  private List<String> imports;
+
+  /**
+   * Constructs a new session.
+   *
+   * @param project The project name.
+   * @param file The project relative file path.
+   * @param contents The contents of the file at the time of completion.
+   * @param anchor The offset where the identifier being completed starts.
+   * @param end The offset where the identifier being completed ends.
+   * @param results All the completion results, in order of relevance.
+   * @param proposals The key of the proposals registered with
+   * CodeCompleteProposals which the results' ids refer to.
+   * @param error The error reported by the completion collector, if any.
+   * @param imports The imports suggested by the completion collector, if any.
+   */
+  public CompletionSession(
+      String project,
+      String file,
+      String contents,
+      int anchor,
+      int end,
+      List<CodeCompleteResult> results,
+      long proposals,
+      Error error,
+      List<String> imports)
+  {
+    this.project = project;
+    this.file = file;
+    this.contents = contents;
+    this.anchor = anchor;
+    this.end = end;
+    this.results = results;
+    this.proposals = proposals;
+    this.error = error;
+    this.imports = imports;
+  }
+
+  /**
+   * Gets the current session if it can be used to complete the identifier
+   * spanning anchor to end in the supplied file contents.
+   *
+   * @param project The project name.
+   * @param file The project relative file path.
+   * @param contents The current contents of the file.
+   * @param anchor The offset where the identifier being completed starts.
+   * @param end The offset where the identifier being completed ends.
+   * @return The session or null if there is no usable session.
+   */
+  public static synchronized CompletionSession get(
+      String project, String file, String contents, int anchor, int end)
+  {
+    CompletionSession session = current;
+    if (session == null ||
+        !session.project.equals(project) ||
+        !session.file.equals(file) ||
+        session.anchor != anchor ||
+        session.end > end)
+    {
+      return null;
+    }
+
+    // everything outside the identifier must be unchanged, and the identifier
+    // may only have been appended to.
+    String previous = session.contents;
+    int trailing = previous.length() - session.end;
+    if (contents.length() - end != trailing ||
+        !contents.regionMatches(0, previous, 0, session.end) ||
+        !contents.regionMatches(end, previous, session.end, trailing))
+    {
+      set(null);
+      return null;
+    }
+    return session;
+  }
+
+  /**
+   * Sets the supplied session as the current session.
+   *
+   * @param session The session (may be null to clear the current session).
+   */
+  public static synchronized void set(CompletionSession session)
+  {
+    if (current != null && current != session){
+      CodeCompleteProposals.release(current.proposals);
+    }
+    current = session;
+    if (session != null){
+      CodeCompleteProposals.retain(session.proposals);
+    }
+  }
+
+  /**
+   * Gets all the completion results of this session, in order of relevance.
+   *
+   * @return List of CodeCompleteResult.
+   */
+  public List<CodeCompleteResult> getResults()
+  {
+    return results;
+  }
+
+  /**
+   * Gets the error reported while collecting the results.
+   *
+   * @return The error or null if none.
+   */
+  public Error getError()
+  {
+    return error;
+  }
+
+  /**
+   * Gets the imports suggested while collecting the results.
+   *
+   * @return The imports or null if none.
+   */
+  public List<String> getImports()
+  {
+    return imports;
+  }
+}
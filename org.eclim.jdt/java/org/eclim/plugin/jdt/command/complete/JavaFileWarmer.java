@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.jdt.command.complete;
+
+import org.eclim.plugin.core.command.complete.FileWarmer;
+
+import org.eclim.plugin.jdt.util.SearchScopes;
+
+import org.eclipse.core.resources.IFile;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+
+import org.eclipse.jdt.core.search.IJavaSearchConstants;
+import org.eclipse.jdt.core.search.SearchEngine;
+import org.eclipse.jdt.core.search.SearchPattern;
+import org.eclipse.jdt.core.search.TypeNameRequestor;
+
+/**
+ * FileWarmer for java source files which opens the compilation unit, builds
+ * its ast, and loads the type name indexes of the project so that the first
+ * java_complete in the file is as fast as any later one.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class JavaFileWarmer
+  implements FileWarmer
+{
+  /**
+   * {@inheritDoc}
+   * @see FileWarmer#warmup(IFile,IProgressMonitor)
+   */
+  public void warmup(IFile file, IProgressMonitor monitor)
+    throws Exception
+  {
+    ICompilationUnit src = JavaCore.createCompilationUnitFrom(file);
+    if (src == null || !src.exists()){
+      return;
+    }
+
+    // java model element info
+    src.open(monitor);
+    if (monitor.isCanceled()){
+      return;
+    }
+
+    // ast w/ bindings, which also populates the project's name environment.
+    ASTParser parser = ASTParser.newParser(AST.JLS4);
+    parser.setSource(src);
+    parser.setResolveBindings(true);
+    parser.createAST(monitor);
+    if (monitor.isCanceled()){
+      return;
+    }
+
+    // an exact type name search is cheap to evaluate but still requires every
+    // index in the project's scope to be loaded, which is what the type name
+    // lookups performed by code completion would otherwise pay for.
+    IType type = src.findPrimaryType();
+    String name = type != null ? type.getElementName() : file.getName();
+    new SearchEngine().searchAllTypeNames(
+        null,
+        SearchPattern.R_EXACT_MATCH,
+        name.toCharArray(),
+        SearchPattern.R_EXACT_MATCH | SearchPattern.R_CASE_SENSITIVE,
+        IJavaSearchConstants.TYPE,
+        SearchScopes.getProjectScope(src.getJavaProject()),
+        new TypeNameRequestor(){},
+        IJavaSearchConstants.WAIT_UNTIL_READY_TO_SEARCH,
+        monitor);
+  }
+}
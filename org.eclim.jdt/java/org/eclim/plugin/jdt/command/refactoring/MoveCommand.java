@@ -68,7 +68,9 @@ import org.eclipse.swt.widgets.Shell;
     "REQUIRED f file ARG," +
     "REQUIRED n name ARG," +
     "OPTIONAL v preview NOARG," +
-    "OPTIONAL d diff ARG"
+    "OPTIONAL a all NOARG," +
+    "OPTIONAL d diff ARG," +
+    "OPTIONAL s session ARG"
 )
 public class MoveCommand
   extends AbstractRefactorCommand
@@ -80,7 +80,9 @@ import org.eclipse.ltk.core.refactoring.participants.RenameRefactoring;
     "REQUIRED l length ARG," +
     "REQUIRED e encoding ARG," +
     "OPTIONAL v preview NOARG," +
-    "OPTIONAL d diff ARG"
+    "OPTIONAL a all NOARG," +
+    "OPTIONAL d diff ARG," +
+    "OPTIONAL s session ARG"
 )
 public class RenameCommand
   extends AbstractRefactorCommand
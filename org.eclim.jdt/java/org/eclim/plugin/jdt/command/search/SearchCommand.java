@@ -19,16 +19,14 @@ package org.eclim.plugin.jdt.command.search;
 import java.io.File;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
 
+import java.util.concurrent.Callable;
+
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.vfs.FileObject;
-import org.apache.commons.vfs.FileSystemManager;
-import org.apache.commons.vfs.VFS;
-
 import org.apache.tools.ant.taskdefs.condition.Os;
 
 import org.eclim.Services;
@@ -40,9 +38,14 @@ import org.eclim.command.Options;
 
 import org.eclim.plugin.core.command.AbstractCommand;
 
+import org.eclim.plugin.core.util.ParallelUtils;
 import org.eclim.plugin.core.util.ProjectUtils;
 
+import org.eclim.plugin.jdt.PluginResources;
+
 import org.eclim.plugin.jdt.util.JavaUtils;
+import org.eclim.plugin.jdt.util.SearchScopes;
+import org.eclim.plugin.jdt.util.SourceIndex;
 
 import org.eclim.util.file.FileUtils;
 import org.eclim.util.file.Position;
@@ -52,6 +55,8 @@ import org.eclipse.core.resources.IResource;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 
 import org.eclipse.jdt.core.ICodeAssist;
 import org.eclipse.jdt.core.IJavaElement;
@@ -65,8 +70,17 @@ import org.eclipse.jdt.core.search.SearchMatch;
 import org.eclipse.jdt.core.search.SearchParticipant;
 import org.eclipse.jdt.core.search.SearchPattern;
 
+import com.google.gson.Gson;
+
 /**
  * Command to handle java search requests.
+ * <p/>
+ * With the batch option (-b &lt;size&gt;) the results are streamed to the
+ * client while the search is running rather than returned as a single list.
+ * Each line of output is then a json list of at most &lt;size&gt; results,
+ * and the stream always ends with an empty list, so a search with no results
+ * writes just that terminating line. A stream which ends without the empty
+ * list was cut short by an error.
  *
  * @author Eric Van Dewoestine
  */
@@ -82,7 +96,8 @@ import org.eclipse.jdt.core.search.SearchPattern;
     "OPTIONAL t type ARG," +
     "OPTIONAL x context ARG," +
     "OPTIONAL s scope ARG," +
-    "OPTIONAL i case_insensitive NOARG"
+    "OPTIONAL i case_insensitive NOARG," +
+    "OPTIONAL b batch ARG"
 )
 public class SearchCommand
   extends AbstractCommand
@@ -117,15 +132,44 @@ public class SearchCommand
   private static final Pattern ANDROID_JDK_URL =
     Pattern.compile(".*android\\.jar!java.*");
 
+  private static final long FLUSH_INTERVAL = 200;
+
+  private StreamingRequestor streaming;
+
   @Override
   public Object execute(CommandLine commandLine)
     throws Exception
   {
-    List<SearchMatch> matches = executeSearch(commandLine);
     String projectName = commandLine.getValue(Options.NAME_OPTION);
     IProject project = projectName != null ?
       ProjectUtils.getProject(projectName) : null;
 
+    // stream the results to the client, one json list per batch, while the
+    // search is still running.
+    if(commandLine.hasOption(Options.BATCH_OPTION)){
+      int batch = commandLine.getIntValue(Options.BATCH_OPTION);
+      streaming = new StreamingRequestor(project, batch);
+      executeSearch(commandLine);
+      streaming.flush();
+      streaming.finish();
+      return null;
+    }
+
+    List<SearchMatch> matches = executeSearch(commandLine);
+    return getPositions(project, matches);
+  }
+
+  /**
+   * Converts the supplied matches into positions, skipping package matches.
+   *
+   * @param project The project searching from.
+   * @param matches The SearchMatch list.
+   * @return List of Position.
+   */
+  protected List<Position> getPositions(
+      IProject project, List<SearchMatch> matches)
+    throws Exception
+  {
     ArrayList<Position> results = new ArrayList<Position>();
     for(SearchMatch match : matches){
       IJavaElement element = (IJavaElement)match.getElement();
@@ -221,17 +265,9 @@ public class SearchCommand
           .replace(")", "\\)")
           .replace("*", ".*")
           .replace("?", "."));
-        List<SearchMatch> matches = search(pattern, getScope(scope, javaProject));
-        Iterator<SearchMatch> iterator = matches.iterator();
-        while (iterator.hasNext()){
-          SearchMatch match = iterator.next();
-          String name = JavaUtils.getFullyQualifiedName(
-              (IJavaElement)match.getElement()).replace("#", ".");
-          if (!toMatch.matcher(name).matches()){
-            iterator.remove();
-          }
-        }
-        return matches;
+        SearchRequestor requestor = createRequestor();
+        requestor.setNameFilter(toMatch);
+        return search(pattern, getScope(scope, javaProject), requestor);
       }
 
       pattern = SearchPattern.createPattern(pat, type, context, matchType);
@@ -258,8 +294,34 @@ public class SearchCommand
       SearchPattern pattern, IJavaSearchScope scope)
     throws CoreException
   {
-    SearchRequestor requestor = new SearchRequestor();
+    return search(pattern, scope, createRequestor());
+  }
+
+  /**
+   * Executes the search.
+   *
+   * @param pattern The search pattern.
+   * @param scope The scope of the search (file, project, all, etc).
+   * @param requestor The requestor to collect the matches with.
+   *
+   * @return List of matches.
+   */
+  protected List<SearchMatch> search(
+      SearchPattern pattern, IJavaSearchScope scope, SearchRequestor requestor)
+    throws CoreException
+  {
     if(pattern != null){
+      // split workspace wide searches by project / library roots and run
+      // them in parallel (streamed results are written as they arrive, so
+      // those are still searched on the current thread).
+      if(scope == SearchScopes.getWorkspaceScope() && streaming == null){
+        IJavaSearchScope[] partitions = SearchScopes.getWorkspacePartitions();
+        if(partitions.length > 1){
+          searchParallel(pattern, partitions, requestor);
+          return requestor.getMatches();
+        }
+      }
+
       SearchEngine engine = new SearchEngine();
       SearchParticipant[] participants =
         new SearchParticipant[]{SearchEngine.getDefaultSearchParticipant()};
@@ -268,6 +330,67 @@ public class SearchCommand
     return requestor.getMatches();
   }
 
+  /**
+   * Searches each of the supplied scopes in parallel, each with its own
+   * requestor, then hands the matches to the supplied requestor one scope at
+   * a time, in the order the scopes were supplied, so that the final result
+   * order doesn't depend on which search finished first.
+   *
+   * @param pattern The search pattern.
+   * @param scopes The disjoint scopes to search.
+   * @param requestor The requestor to collect the matches with.
+   */
+  private void searchParallel(
+      final SearchPattern pattern,
+      IJavaSearchScope[] scopes,
+      SearchRequestor requestor)
+    throws CoreException
+  {
+    final SearchParticipant[] participants =
+      new SearchParticipant[]{SearchEngine.getDefaultSearchParticipant()};
+
+    ArrayList<Callable<List<SearchMatch>>> tasks =
+      new ArrayList<Callable<List<SearchMatch>>>();
+    for(final IJavaSearchScope scope : scopes){
+      tasks.add(new Callable<List<SearchMatch>>(){
+        public List<SearchMatch> call()
+          throws Exception
+        {
+          SearchRequestor partial = new SearchRequestor();
+          new SearchEngine().search(
+              pattern, participants, scope, partial, null);
+          return partial.getMatches();
+        }
+      });
+    }
+
+    List<List<SearchMatch>> results;
+    try{
+      results = ParallelUtils.invokeAll(tasks);
+    }catch(CoreException ce){
+      throw ce;
+    }catch(Exception e){
+      throw new CoreException(new Status(
+            IStatus.ERROR, PluginResources.NAME, e.getMessage(), e));
+    }
+
+    for(List<SearchMatch> matches : results){
+      for(SearchMatch match : matches){
+        requestor.acceptSearchMatch(match);
+      }
+    }
+  }
+
+  /**
+   * Creates the requestor used to collect search matches.
+   *
+   * @return The SearchRequestor.
+   */
+  protected SearchRequestor createRequestor()
+  {
+    return streaming != null ? streaming : new SearchRequestor();
+  }
+
   /**
    * Gets a IJavaElement by its position.
    *
@@ -381,24 +504,24 @@ public class SearchCommand
           }else{
             rootPath = srcPath.toOSString();
           }
-          String srcFile = FileUtils.toUrl(
-              rootPath + File.separator + classFile + ".java");
+          // inner classes live in the source file of their outer class.
+          String entry = classFile.replace(File.separatorChar, '/');
+          int inner = entry.indexOf('$', entry.lastIndexOf('/') + 1);
+          if (inner != -1){
+            entry = entry.substring(0, inner);
+          }
+          entry += ".java";
 
           // see if source file exists at source path.
-          FileSystemManager fsManager = VFS.getManager();
-          FileObject fileObject = fsManager.resolveFile(srcFile);
-          if(fileObject.exists()){
-            file = srcFile;
+          if(SourceIndex.exists(rootPath, entry)){
+            file = FileUtils.toUrl(rootPath + File.separator + entry);
 
           // jdk sources on osx are under a "src/" dir in the jar
-          }else if (Os.isFamily(Os.FAMILY_MAC)){
-            srcFile = FileUtils.toUrl(
-                rootPath + File.separator + "src" +
-                File.separator + classFile + ".java");
-            fileObject = fsManager.resolveFile(srcFile);
-            if(fileObject.exists()){
-              file = srcFile;
-            }
+          }else if (Os.isFamily(Os.FAMILY_MAC) &&
+              SourceIndex.exists(rootPath, "src/" + entry))
+          {
+            file = FileUtils.toUrl(
+                rootPath + File.separator + "src/" + entry);
           }
         }
       }
@@ -424,12 +547,10 @@ public class SearchCommand
   protected IJavaSearchScope getScope(String scope, IJavaProject project)
     throws Exception
   {
-    if(project == null){
-      return SearchEngine.createWorkspaceScope();
-    }else if(SCOPE_PROJECT.equals(scope)){
-      return SearchEngine.createJavaSearchScope(new IJavaElement[]{project});
+    if(project != null && SCOPE_PROJECT.equals(scope)){
+      return SearchScopes.getProjectScope(project);
     }
-    return SearchEngine.createWorkspaceScope();
+    return SearchScopes.getWorkspaceScope();
   }
 
   /**
@@ -502,4 +623,84 @@ public class SearchCommand
     }
     return IJavaSearchConstants.TYPE;
   }
+
+  /**
+   * Requestor which converts matches to positions in batches and writes each
+   * batch to the client as soon as it is full (or a short interval has
+   * passed), rather than waiting for the search engine to finish.
+   */
+  private class StreamingRequestor
+    extends SearchRequestor
+  {
+    private final SearchMatchComparator comparator =
+      new SearchMatchComparator();
+    private final Gson gson = new Gson();
+
+    private IProject project;
+    private int batch;
+    private ArrayList<SearchMatch> pending = new ArrayList<SearchMatch>();
+    private long flushed = System.currentTimeMillis();
+
+    public StreamingRequestor(IProject project, int batch)
+    {
+      this.project = project;
+      this.batch = batch > 0 ? batch : 50;
+    }
+
+    @Override
+    protected void accept(SearchMatch match)
+      throws CoreException
+    {
+      pending.add(match);
+      if (pending.size() >= batch ||
+          System.currentTimeMillis() - flushed >= FLUSH_INTERVAL)
+      {
+        flush();
+      }
+    }
+
+    @Override
+    public List<SearchMatch> getMatches()
+    {
+      // matches are written out as they arrive, so there is nothing to return.
+      return new ArrayList<SearchMatch>();
+    }
+
+    /**
+     * Writes any pending matches to the client.
+     */
+    public void flush()
+      throws CoreException
+    {
+      flushed = System.currentTimeMillis();
+      if (pending.isEmpty()){
+        return;
+      }
+
+      Collections.sort(pending, comparator);
+      try{
+        List<Position> positions = getPositions(project, pending);
+        if (positions.size() > 0){
+          getContext().out.println(gson.toJson(positions));
+          getContext().out.flush();
+        }
+      }catch(CoreException ce){
+        throw ce;
+      }catch(Exception e){
+        throw new CoreException(new Status(
+              IStatus.ERROR, PluginResources.NAME, e.getMessage(), e));
+      }finally{
+        pending.clear();
+      }
+    }
+
+    /**
+     * Writes the empty list which terminates the stream.
+     */
+    public void finish()
+    {
+      getContext().out.println("[]");
+      getContext().out.flush();
+    }
+  }
 }
@@ -21,7 +21,10 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import java.util.regex.Pattern;
+
 import org.eclim.plugin.jdt.util.IJavaElementComparator;
+import org.eclim.plugin.jdt.util.JavaUtils;
 
 import org.eclipse.core.runtime.CoreException;
 
@@ -41,6 +44,7 @@ public class SearchRequestor
     new SearchMatchComparator();
 
   private ArrayList<SearchMatch> matches = new ArrayList<SearchMatch>();
+  private Pattern nameFilter;
 
   /**
    * {@inheritDoc}
@@ -49,10 +53,39 @@ public class SearchRequestor
     throws CoreException
   {
     if(match.getAccuracy() == SearchMatch.A_ACCURATE){
-      matches.add(match);
+      if (nameFilter != null){
+        String name = JavaUtils.getFullyQualifiedName(
+            (IJavaElement)match.getElement()).replace("#", ".");
+        if (!nameFilter.matcher(name).matches()){
+          return;
+        }
+      }
+      accept(match);
     }
   }
 
+  /**
+   * Invoked for each accurate match that passes the name filter, if any.
+   *
+   * @param match The SearchMatch.
+   */
+  protected void accept(SearchMatch match)
+    throws CoreException
+  {
+    matches.add(match);
+  }
+
+  /**
+   * Sets a pattern which the fully qualified name of each match's element
+   * must match for the match to be accepted.
+   *
+   * @param nameFilter The Pattern.
+   */
+  public void setNameFilter(Pattern nameFilter)
+  {
+    this.nameFilter = nameFilter;
+  }
+
   /**
    * Gets a list of all the matches found.
    *
@@ -29,7 +29,10 @@ import org.eclipse.core.resources.IProject;
 
 import org.eclipse.core.runtime.IPath;
 
+import org.eclipse.jdt.core.ElementChangedEvent;
 import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaModelException;
 
@@ -42,6 +45,49 @@ public class ClasspathUtils
 {
   private static final Logger logger = Logger.getLogger(ClasspathUtils.class);
 
+  private static final int CLASSPATH_FLAGS =
+    IJavaElementDelta.F_CLASSPATH_CHANGED |
+    IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED |
+    IJavaElementDelta.F_ADDED_TO_CLASSPATH |
+    IJavaElementDelta.F_REMOVED_FROM_CLASSPATH |
+    IJavaElementDelta.F_OPENED |
+    IJavaElementDelta.F_CLOSED;
+
+  /**
+   * Gets the delta of the first java project in the supplied event whose
+   * classpath changed, which includes the project being added, removed,
+   * opened or closed, and package fragment roots being added to or removed
+   * from its classpath.
+   *
+   * @param event The ElementChangedEvent.
+   * @return The project's IJavaElementDelta or null if no classpath changed.
+   */
+  public static IJavaElementDelta getClasspathChange(ElementChangedEvent event)
+  {
+    for (IJavaElementDelta delta : event.getDelta().getAffectedChildren()){
+      if (delta.getElement().getElementType() != IJavaElement.JAVA_PROJECT){
+        continue;
+      }
+
+      if (delta.getKind() != IJavaElementDelta.CHANGED ||
+          (delta.getFlags() & CLASSPATH_FLAGS) != 0)
+      {
+        return delta;
+      }
+
+      for (IJavaElementDelta child : delta.getAffectedChildren()){
+        if (child.getElement().getElementType() ==
+              IJavaElement.PACKAGE_FRAGMENT_ROOT &&
+            (child.getKind() != IJavaElementDelta.CHANGED ||
+             (child.getFlags() & CLASSPATH_FLAGS) != 0))
+        {
+          return delta;
+        }
+      }
+    }
+    return null;
+  }
+
   /**
    * Gets an array of paths representing the project's classpath.
    *
@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.jdt.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclim.logging.Logger;
+
+import org.eclim.plugin.core.util.ParallelUtils;
+
+import org.eclipse.core.resources.ResourcesPlugin;
+
+import org.eclipse.core.runtime.IPath;
+
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import org.eclipse.jdt.core.search.IJavaSearchScope;
+import org.eclipse.jdt.core.search.SearchEngine;
+
+/**
+ * Cache of java search scopes.
+ * <p/>
+ * Building a search scope requires jdt to compute the full set of source
+ * folders and jars reachable from the project(s), so scopes are built once
+ * and reused until a classpath change is reported to the listener returned by
+ * {@link #getChangeListener()}. Since a project's scope includes its required
+ * projects, any classpath change evicts all cached scopes.
+ * <p/>
+ * The workspace scope can also be obtained as a set of disjoint partitions
+ * (see {@link #getWorkspacePartitions()}) so that a search over the whole
+ * workspace can be split across several threads.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class SearchScopes
+{
+  private static final Logger logger = Logger.getLogger(SearchScopes.class);
+
+  // key used for the workspace scope (project names can't be empty).
+  private static final String WORKSPACE = "";
+
+  private static ConcurrentHashMap<String,IJavaSearchScope> scopes =
+    new ConcurrentHashMap<String,IJavaSearchScope>();
+
+  private static AtomicReference<IJavaSearchScope[]> partitions =
+    new AtomicReference<IJavaSearchScope[]>();
+
+  // advanced on every invalidation so that a scope computed concurrently with
+  // one can be discarded rather than cached.
+  private static AtomicLong generation = new AtomicLong();
+
+  private static ChangeListener listener = new ChangeListener();
+
+  private SearchScopes()
+  {
+  }
+
+  /**
+   * Gets a search scope containing all java elements in the workspace.
+   *
+   * @return The IJavaSearchScope.
+   */
+  public static IJavaSearchScope getWorkspaceScope()
+  {
+    IJavaSearchScope scope = scopes.get(WORKSPACE);
+    if (scope == null){
+      long current = generation.get();
+      scope = SearchEngine.createWorkspaceScope();
+      cache(WORKSPACE, scope, current);
+    }
+    return scope;
+  }
+
+  /**
+   * Gets a search scope containing the supplied project, its source folders,
+   * jars, and required projects.
+   *
+   * @param javaProject The java project.
+   * @return The IJavaSearchScope.
+   */
+  public static IJavaSearchScope getProjectScope(IJavaProject javaProject)
+  {
+    String name = javaProject.getElementName();
+    IJavaSearchScope scope = scopes.get(name);
+    if (scope == null){
+      long current = generation.get();
+      scope = SearchEngine.createJavaSearchScope(
+          new IJavaElement[]{javaProject});
+      cache(name, scope, current);
+    }
+    return scope;
+  }
+
+  /**
+   * Gets the workspace scope split into disjoint partitions: one per java
+   * project containing just that project's source folders, followed by the
+   * workspace's distinct library roots divided into one group per worker
+   * thread.
+   *
+   * @return Array of IJavaSearchScope.
+   */
+  public static IJavaSearchScope[] getWorkspacePartitions()
+    throws JavaModelException
+  {
+    IJavaSearchScope[] cached = partitions.get();
+    if (cached != null){
+      return cached;
+    }
+
+    long current = generation.get();
+
+    IJavaProject[] projects = JavaCore.create(
+        ResourcesPlugin.getWorkspace().getRoot()).getJavaProjects();
+
+    ArrayList<IJavaSearchScope> results = new ArrayList<IJavaSearchScope>();
+    LinkedHashMap<IPath,IPackageFragmentRoot> libraries =
+      new LinkedHashMap<IPath,IPackageFragmentRoot>();
+    for (IJavaProject project : projects){
+      results.add(SearchEngine.createJavaSearchScope(
+            new IJavaElement[]{project}, IJavaSearchScope.SOURCES));
+
+      // the same jar on the classpath of several projects is only searched
+      // once, like it is by the workspace scope.
+      for (IPackageFragmentRoot root : project.getAllPackageFragmentRoots()){
+        if (root.getKind() == IPackageFragmentRoot.K_BINARY &&
+            !libraries.containsKey(root.getPath()))
+        {
+          libraries.put(root.getPath(), root);
+        }
+      }
+    }
+
+    int count = Math.min(ParallelUtils.getThreadCount(), libraries.size());
+    ArrayList<List<IJavaElement>> groups = new ArrayList<List<IJavaElement>>();
+    for (int ii = 0; ii < count; ii++){
+      groups.add(new ArrayList<IJavaElement>());
+    }
+    int index = 0;
+    for (IPackageFragmentRoot root : libraries.values()){
+      groups.get(index++ % count).add(root);
+    }
+    for (List<IJavaElement> group : groups){
+      results.add(SearchEngine.createJavaSearchScope(
+            group.toArray(new IJavaElement[group.size()])));
+    }
+
+    cached = results.toArray(new IJavaSearchScope[results.size()]);
+    partitions.set(cached);
+
+    // invalidated while the partitions were being created, so they may be
+    // stale.
+    if (generation.get() != current){
+      partitions.compareAndSet(cached, null);
+    }
+    return cached;
+  }
+
+  private static void cache(String key, IJavaSearchScope scope, long current)
+  {
+    scopes.put(key, scope);
+
+    // invalidated while the scope was being created, so it may be stale.
+    if (generation.get() != current){
+      scopes.remove(key, scope);
+    }
+  }
+
+  /**
+   * Gets the element change listener which evicts cached scopes when a
+   * project's classpath changes or a project is added, removed, opened or
+   * closed.
+   *
+   * @return The IElementChangedListener.
+   */
+  public static IElementChangedListener getChangeListener()
+  {
+    return listener;
+  }
+
+  private static class ChangeListener
+    implements IElementChangedListener
+  {
+    @Override
+    public void elementChanged(ElementChangedEvent event)
+    {
+      IJavaElementDelta delta = ClasspathUtils.getClasspathChange(event);
+      if (delta != null){
+        logger.debug("invalidating search scopes for: {}",
+            delta.getElement().getElementName());
+        generation.incrementAndGet();
+        scopes.clear();
+        partitions.set(null);
+      }
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2013  Eric Van Dewoestine
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.eclim.plugin.jdt.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.eclim.logging.Logger;
+
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElementDelta;
+
+/**
+ * Index of the java source files available in source attachments.
+ * <p/>
+ * The entries of an archived source attachment are read once from the
+ * archive's central directory, so checking if a given source file exists no
+ * longer requires opening the archive. An archive's entries are re-read if it
+ * is modified, and all entries are evicted when a classpath change is
+ * reported to the listener returned by {@link #getChangeListener()}.
+ *
+ * @author Eric Van Dewoestine
+ */
+public class SourceIndex
+{
+  private static final Logger logger = Logger.getLogger(SourceIndex.class);
+
+  private static ConcurrentHashMap<String,Archive> archives =
+    new ConcurrentHashMap<String,Archive>();
+
+  private static ChangeListener listener = new ChangeListener();
+
+  private SourceIndex()
+  {
+  }
+
+  /**
+   * Determines if the supplied entry exists in the source attachment.
+   *
+   * @param attachment The absolute path to the source archive or directory.
+   * @param entry The '/' separated path of the entry (ex.
+   * org/eclim/Foo.java).
+   * @return true if the entry exists, false otherwise.
+   */
+  public static boolean exists(String attachment, String entry)
+  {
+    File file = new File(attachment);
+    if (file.isDirectory()){
+      return new File(file, entry).isFile();
+    }
+
+    long modified = file.lastModified();
+    if (modified == 0){
+      return false;
+    }
+
+    Archive archive = archives.get(attachment);
+    if (archive == null || archive.modified != modified){
+      archive = new Archive(modified, readEntries(file));
+      archives.put(attachment, archive);
+    }
+    return archive.entries.contains(entry);
+  }
+
+  /**
+   * Gets the element change listener which evicts indexed source archives when
+   * a project's classpath changes.
+   *
+   * @return The IElementChangedListener.
+   */
+  public static IElementChangedListener getChangeListener()
+  {
+    return listener;
+  }
+
+  private static Set<String> readEntries(File file)
+  {
+    logger.debug("indexing source attachment: {}", file);
+    ZipFile zip = null;
+    try{
+      zip = new ZipFile(file);
+      HashSet<String> entries = new HashSet<String>();
+      Enumeration<? extends ZipEntry> e = zip.entries();
+      while (e.hasMoreElements()){
+        String name = e.nextElement().getName();
+        if (name.endsWith(".java")){
+          entries.add(name);
+        }
+      }
+      return entries;
+    }catch(IOException ioe){
+      logger.warn("Unable to read source attachment: " + file, ioe);
+      return Collections.emptySet();
+    }finally{
+      try{
+        if (zip != null){
+          zip.close();
+        }
+      }catch(IOException ignore){
+      }
+    }
+  }
+
+  private static class Archive
+  {
+    public final long modified;
+    public final Set<String> entries;
+
+    public Archive(long modified, Set<String> entries)
+    {
+      this.modified = modified;
+      this.entries = entries;
+    }
+  }
+
+  private static class ChangeListener
+    implements IElementChangedListener
+  {
+    @Override
+    public void elementChanged(ElementChangedEvent event)
+    {
+      if (archives.isEmpty()){
+        return;
+      }
+
+      IJavaElementDelta delta = ClasspathUtils.getClasspathChange(event);
+      if (delta != null){
+        logger.debug("invalidating source index for: {}",
+            delta.getElement().getElementName());
+        archives.clear();
+      }
+    }
+  }
+}
@@ -661,8 +661,7 @@ public class TypeUtils
           IJavaSearchConstants.TYPE,
           IJavaSearchConstants.DECLARATIONS,
           SearchPattern.R_EXACT_MATCH | SearchPattern.R_CASE_SENSITIVE);
-    IJavaSearchScope scope =
-      SearchEngine.createJavaSearchScope(new IJavaElement[]{javaProject});
+    IJavaSearchScope scope = SearchScopes.getProjectScope(javaProject);
     SearchRequestor requestor = new SearchRequestor();
     SearchEngine engine = new SearchEngine();
     SearchParticipant[] participants =
@@ -61,6 +61,13 @@ public class CodeCompleteCommandTest
     assertEquals(result.get("menu"), "add(int index, Object element) : void - List");
     assertEquals(result.get("info"), "add(int index, Object element) : void - List");
     assertEquals(result.get("type"), "f");
+    assertNotNull("Missing completion id.", result.get("id"));
+
+    String info = (String)Eclim.execute(new String[]{
+      "completion_info", "-i", (String)result.get("id")
+    });
+    assertTrue("Missing completion info.", info.length() > 0);
+    assertFalse("Completion not found.", info.endsWith("no longer available."));
 
     result = completions.get(completions.size() - 1);
     assertEquals(result.get("completion"), "wait()");
@@ -100,6 +107,38 @@ public class CodeCompleteCommandTest
     assertEquals(result.get("type"), "f");
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void completionFilterAndLimit()
+  {
+    assertTrue("Java project doesn't exist.",
+        Eclim.projectExists(Jdt.TEST_PROJECT));
+
+    Map<String,Object> results = (Map<String,Object>)
+      Eclim.execute(new String[]{
+        "java_complete", "-p", Jdt.TEST_PROJECT,
+        "-f", TEST_FILE,
+        "-o", "184", "-e", "utf-8", "-l", "standard", "-x", "addA"
+      });
+    List<Map<String,Object>> completions = (List<Map<String,Object>>)
+      results.get("completions");
+
+    assertEquals("Wrong number of completions.", 2, completions.size());
+    for (Map<String,Object> result : completions){
+      assertEquals(result.get("completion"), "addAll(");
+    }
+
+    results = (Map<String,Object>)
+      Eclim.execute(new String[]{
+        "java_complete", "-p", Jdt.TEST_PROJECT,
+        "-f", TEST_FILE,
+        "-o", "184", "-e", "utf-8", "-l", "standard", "-m", "5"
+      });
+    completions = (List<Map<String,Object>>)results.get("completions");
+
+    assertEquals("Wrong number of completions.", 5, completions.size());
+  }
+
   @Test
   @SuppressWarnings("unchecked")
   public void completionMissingImport()
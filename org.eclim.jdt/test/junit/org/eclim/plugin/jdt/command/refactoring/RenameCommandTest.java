@@ -69,6 +69,7 @@ public class RenameCommandTest
         "-p \"eclim_unit_test_java\" " +
         "-f \"src/org/eclim/test/refactoring/rename/n1/TestN1.java\" " +
         "-n \"BAR\" -o \"98\" -l \"3\" -e \"utf-8\"", preview.get("apply"));
+    assertNotNull(preview.get("session"));
     List<Map<String,String>> changes =
       (List<Map<String,String>>)preview.get("changes");
     assertEquals(2, changes.size());
@@ -86,10 +87,26 @@ public class RenameCommandTest
       "-n", "BAR", "-o", "98", "-l", "3", "-e", "utf-8", "-v",
       "-d", Eclim.resolveFile(Jdt.TEST_PROJECT,
       "src/org/eclim/test/refactoring/rename/n1/n2/TestN2.java"),
+      "-s", preview.get("session").toString(),
     });
     assertEquals("Wrong diff results",
         tn2Contents.replaceAll("FOO", "BAR"), diff);
 
+    // preview all diffs
+    preview = (Map<String,Object>)
+      Eclim.execute(new String[]{
+        "java_refactor_rename", "-p", Jdt.TEST_PROJECT,
+        "-f", "src/org/eclim/test/refactoring/rename/n1/TestN1.java",
+        "-n", "BAR", "-o", "98", "-l", "3", "-e", "utf-8", "-v", "-a",
+        "-s", preview.get("session").toString(),
+      });
+    changes = (List<Map<String,String>>)preview.get("changes");
+    assertEquals(2, changes.size());
+    assertEquals("Wrong diff results",
+        tn1Contents.replaceAll("FOO", "BAR"), changes.get(0).get("preview"));
+    assertEquals("Wrong diff results",
+        tn2Contents.replaceAll("FOO", "BAR"), changes.get(1).get("preview"));
+
     // rename
     List<Map<String,String>> result = (List<Map<String,String>>)
       Eclim.execute(new String[]{
@@ -16,6 +16,9 @@
  */
 package org.eclim.plugin.jdt.command.search;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -27,6 +30,8 @@ import org.junit.Test;
 
 import static org.junit.Assert.*;
 
+import com.google.gson.JsonParser;
+
 /**
  * Test case for SearchCommand.
  *
@@ -142,4 +147,72 @@ public class SearchCommandTest
     assertEquals(result.get("line"), 8);
     assertEquals(result.get("column"), 16);
   }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void searchInnerClass()
+  {
+    assertTrue("Java project doesn't exist.",
+        Eclim.projectExists(Jdt.TEST_PROJECT));
+
+    List<Map<String,Object>> results = (List<Map<String,Object>>)
+      Eclim.execute(new String[]{
+        "java_search", "-n", Jdt.TEST_PROJECT,
+        "-f", TEST_FILE,
+        "-p", "java.util.Map$Entry", "-t", "interface"
+      });
+
+    assertEquals("Wrong number of results.", 1, results.size());
+
+    // inner class matches resolve to the outer class's source file.
+    Map<String,Object> result = results.get(0);
+    assertTrue(((String)result.get("filename"))
+        .endsWith("/java/util/Map.java"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void searchBatches()
+  {
+    assertTrue("Java project doesn't exist.",
+        Eclim.projectExists(Jdt.TEST_PROJECT));
+
+    // more than one line of output isn't a single json value, so the raw
+    // output is returned.
+    String result = (String)Eclim.execute(new String[]{
+      "java_search", "-n", Jdt.TEST_PROJECT,
+      "-f", TEST_FILE,
+      "-p", "NPE", "-s", "project", "-b", "1"
+    }, false);
+    String[] lines = result.split("\n");
+    assertEquals("Wrong number of batches.", 3, lines.length);
+
+    // batches are written in the order the matches are found.
+    JsonParser parser = new JsonParser();
+    ArrayList<String> filenames = new ArrayList<String>();
+    for (int ii = 0; ii < 2; ii++){
+      List<Map<String,Object>> batch = (List<Map<String,Object>>)
+        Eclim.toType(parser.parse(lines[ii]));
+      assertEquals(1, batch.size());
+      String filename = (String)batch.get(0).get("filename");
+      filenames.add(filename.substring(filename.lastIndexOf('/') + 1));
+    }
+    Collections.sort(filenames);
+    assertEquals(Arrays.asList(new String[]{
+      "NoPermissionException.java", "NullPointerException.java"}), filenames);
+
+    // the stream is terminated by an empty batch.
+    List<Map<String,Object>> batch = (List<Map<String,Object>>)
+      Eclim.toType(parser.parse(lines[2]));
+    assertEquals(0, batch.size());
+
+    // no results: just the terminating empty batch.
+    List<Map<String,Object>> results = (List<Map<String,Object>>)
+      Eclim.execute(new String[]{
+        "java_search", "-n", Jdt.TEST_PROJECT,
+        "-f", TEST_FILE,
+        "-p", "NoSuchTypeXyz", "-s", "project", "-b", "1"
+      });
+    assertEquals(0, results.size());
+  }
 }
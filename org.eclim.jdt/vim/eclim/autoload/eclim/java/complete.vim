@@ -33,12 +33,20 @@
   if !exists("g:EclimJavaCompleteCaseSensitive")
     let g:EclimJavaCompleteCaseSensitive = !&ignorecase
   endif
+  if !exists("g:EclimJavaCompleteLimit")
+    let g:EclimJavaCompleteLimit = 0
+  endif
 " }}}
 
 " Script Varables {{{
   let s:complete_command =
     \ '-command java_complete -p "<project>" -f "<file>" ' .
     \ '-o <offset> -e <encoding> -l <layout>'
+  let s:info_command = '-command completion_info -i "<id>"'
+
+  " ids of the last completion results, keyed by word and menu, used to
+  " resolve the full info of the accepted result.
+  let s:completion_ids = {}
 " }}}
 
 " CodeComplete(findstart, base) {{{
@@ -80,8 +88,15 @@ function! eclim#java#complete#CodeComplete(findstart, base)
     let command = substitute(command, '<offset>', offset, '')
     let command = substitute(command, '<encoding>', eclim#util#GetEncoding(), '')
     let command = substitute(command, '<layout>', g:EclimJavaCompleteLayout, '')
+    if a:base != ''
+      let command .= ' -x "' . a:base . '"'
+    endif
+    if g:EclimJavaCompleteLimit > 0
+      let command .= ' -m ' . g:EclimJavaCompleteLimit
+    endif
 
     let completions = []
+    let s:completion_ids = {}
     let response = eclim#Execute(command)
     if type(response) != g:DICT_TYPE
       return
@@ -162,12 +177,57 @@ function! eclim#java#complete#CodeComplete(findstart, base)
         \ }
 
       call add(completions, dict)
+      if has_key(result, 'id')
+        let s:completion_ids[word . "\n" . menu] = result.id
+      endif
     endfor
 
     return completions
   endif
 endfunction " }}}
 
+" CompletionInfo() {{{
+" Called when a completion is accepted to replace the short info shown in the
+" preview window with the full info (javadoc) of that completion, which is
+" only resolved on request via the completion_info command.
+function! eclim#java#complete#CompletionInfo()
+  if &completeopt !~ 'preview' ||
+   \ !exists('v:completed_item') || empty(v:completed_item)
+    return
+  endif
+
+  let key = v:completed_item.word . "\n" . v:completed_item.menu
+  let id = get(s:completion_ids, key, '')
+  if id == ''
+    return
+  endif
+
+  let winnr = 0
+  for winnum in range(1, winnr('$'))
+    if getwinvar(winnum, '&previewwindow')
+      let winnr = winnum
+      break
+    endif
+  endfor
+  if !winnr
+    return
+  endif
+
+  let info = eclim#Execute(substitute(s:info_command, '<id>', id, ''))
+  if type(info) != g:STRING_TYPE || info == ''
+    return
+  endif
+
+  let curwinnr = winnr()
+  noautocmd exec winnr . 'winc w'
+  setlocal modifiable noreadonly
+  silent 1,$delete _
+  call append(1, split(eclim#html#util#HtmlToText(info), "\n"))
+  silent 1delete _
+  call cursor(1, 1)
+  noautocmd exec curwinnr . 'winc w'
+endfunction " }}}
+
 " ImportThenComplete {{{
 " Called by CodeComplete when the completion depends on a missing import.
 function! eclim#java#complete#ImportThenComplete(choices)
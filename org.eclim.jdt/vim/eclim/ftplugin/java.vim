@@ -115,6 +115,10 @@ if &ft == 'java'
   augroup eclim_java
     autocmd! BufWritePost <buffer>
     autocmd BufWritePost <buffer> call eclim#lang#UpdateSrcFile('java')
+    if exists('##CompleteDone')
+      autocmd! CompleteDone <buffer>
+      autocmd CompleteDone <buffer> call eclim#java#complete#CompletionInfo()
+    endif
   augroup END
 endif
 
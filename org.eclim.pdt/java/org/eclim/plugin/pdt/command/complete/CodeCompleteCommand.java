@@ -41,7 +41,10 @@ import org.eclipse.php.internal.ui.editor.contentassist.PHPCompletionProposalCol
     "REQUIRED p project ARG," +
     "REQUIRED f file ARG," +
     "REQUIRED o offset ARG," +
-    "REQUIRED e encoding ARG"
+    "REQUIRED e encoding ARG," +
+    "OPTIONAL x prefix ARG," +
+    "OPTIONAL m limit ARG," +
+    "OPTIONAL d deferinfo NOARG"
 )
 public class CodeCompleteCommand
   extends AbstractCodeCompleteCommand
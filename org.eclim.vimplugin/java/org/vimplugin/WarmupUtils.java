@@ -0,0 +1,35 @@
+package org.vimplugin;
+
+import org.eclim.command.CommandLine;
+import org.eclim.command.Options;
+
+import org.eclim.logging.Logger;
+
+/**
+ * Utility functions for warming up eclim's caches for files opened in vim.
+ */
+public class WarmupUtils
+{
+  private static final Logger logger = Logger.getLogger(WarmupUtils.class);
+
+  /**
+   * Runs eclim's file_warmup command for the supplied file, which schedules a
+   * low priority background job to prime the caches used by code completion
+   * in that file.
+   *
+   * @param path The absolute path of the file.
+   */
+  public static void warmup(String path)
+  {
+    try{
+      CommandLine commandLine = new Options().parse(new String[]{
+        "-command", "file_warmup", "-f", path,
+      });
+      commandLine.getCommand().execute(commandLine);
+    }catch(Exception e){
+      // the file_warmup command is only available when eclim's core plugin is
+      // installed, and warming up is only ever an optimization.
+      logger.debug("Unable to warm up file: " + path, e);
+    }
+  }
+}
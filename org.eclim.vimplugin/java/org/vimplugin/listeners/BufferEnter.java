@@ -4,6 +4,7 @@ import org.vimplugin.VimEvent;
 import org.vimplugin.VimException;
 import org.vimplugin.VimPlugin;
 import org.vimplugin.VimServer;
+import org.vimplugin.WarmupUtils;
 import org.vimplugin.editors.VimEditor;
 
 /**
@@ -33,6 +34,7 @@ public class BufferEnter
           veditor.setTitleTo(filePath);
         }
       }
+      WarmupUtils.warmup(filePath);
     }
   }
 }
@@ -14,6 +14,7 @@ import org.vimplugin.VimEvent;
 import org.vimplugin.VimException;
 import org.vimplugin.VimPlugin;
 import org.vimplugin.VimServer;
+import org.vimplugin.WarmupUtils;
 import org.vimplugin.editors.VimEditor;
 
 /**
@@ -39,6 +40,7 @@ public class FileOpened implements IVimListener {
           veditor.setTitleTo(filePath);
         }
       }
+      WarmupUtils.warmup(filePath);
     }
   }
 }
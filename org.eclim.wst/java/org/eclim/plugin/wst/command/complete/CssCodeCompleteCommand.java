@@ -54,7 +54,10 @@ import org.eclipse.wst.sse.ui.internal.StructuredTextViewer;
     "REQUIRED p project ARG," +
     "REQUIRED f file ARG," +
     "REQUIRED o offset ARG," +
-    "REQUIRED e encoding ARG"
+    "REQUIRED e encoding ARG," +
+    "OPTIONAL x prefix ARG," +
+    "OPTIONAL m limit ARG," +
+    "OPTIONAL d deferinfo NOARG"
 )
 public class CssCodeCompleteCommand
   extends WstCodeCompleteCommand
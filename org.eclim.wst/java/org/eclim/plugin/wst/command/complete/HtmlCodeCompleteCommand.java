@@ -36,7 +36,10 @@ import org.eclipse.wst.html.ui.internal.contentassist.HTMLContentAssistProcessor
     "REQUIRED p project ARG," +
     "REQUIRED f file ARG," +
     "REQUIRED o offset ARG," +
-    "REQUIRED e encoding ARG"
+    "REQUIRED e encoding ARG," +
+    "OPTIONAL x prefix ARG," +
+    "OPTIONAL m limit ARG," +
+    "OPTIONAL d deferinfo NOARG"
 )
 public class HtmlCodeCompleteCommand
   extends WstCodeCompleteCommand
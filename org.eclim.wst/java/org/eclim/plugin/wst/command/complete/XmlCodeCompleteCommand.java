@@ -40,7 +40,10 @@ import org.eclipse.wst.xml.ui.internal.contentassist.XMLContentAssistProcessor;
     "REQUIRED p project ARG," +
     "REQUIRED f file ARG," +
     "REQUIRED o offset ARG," +
-    "REQUIRED e encoding ARG"
+    "REQUIRED e encoding ARG," +
+    "OPTIONAL x prefix ARG," +
+    "OPTIONAL m limit ARG," +
+    "OPTIONAL d deferinfo NOARG"
 )
 public class XmlCodeCompleteCommand
   extends WstCodeCompleteCommand
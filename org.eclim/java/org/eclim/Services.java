@@ -140,6 +140,25 @@ public class Services
     return null;
   }
 
+  /**
+   * Gets every resource, across all the available plugins, found at the
+   * supplied path.
+   *
+   * @param resource The resource to find.
+   * @return Possibly empty list of resource URLs.
+   */
+  public static List<URL> getResources(String resource)
+  {
+    ArrayList<URL> urls = new ArrayList<URL>();
+    for(PluginResources resources : pluginResources.values()){
+      URL url = resources.getResource(resource);
+      if(url != null){
+        urls.add(url);
+      }
+    }
+    return urls;
+  }
+
   /**
    * Gets a resource stream by searching the available plugins for it.
    *
@@ -45,12 +45,16 @@ public class Options
   public static final String APPLY_OPTION = "a";
   public static final String ARGS_OPTION = "a";
   public static final String BASEDIR_OPTION = "b";
+  public static final String BATCH_OPTION = "b";
+  public static final String BUFFER_OPTION = "b";
   public static final String BUILD_OPTION = "b";
   public static final String BUILD_FILE_OPTION = "b";
   public static final String CASE_INSENSITIVE_OPTION = "i";
   public static final String CLASSNAME_OPTION = "c";
+  public static final String COMPARE_OPTION = "c";
   public static final String CONTEXT_OPTION = "x";
   public static final String DEBUG_OPTION = "d";
+  public static final String DEFER_INFO_OPTION = "d";
   public static final String DELIMETER_OPTION = "d";
   public static final String DEPENDS_OPTION = "d";
   public static final String DEST_OPTION = "d";
@@ -63,6 +67,8 @@ public class Options
   public static final String FOLDER_OPTION = "f";
   public static final String HELP = "help";
   public static final String HALT_OPTION = "h";
+  public static final String ID_OPTION = "i";
+  public static final String INCLUDES_OPTION = "i";
   public static final String INDENT_OPTION = "i";
   public static final String INDEXED_OPTION = "i";
   public static final String JARS_OPTION = "j";
@@ -71,6 +77,8 @@ public class Options
   public static final String LENGTH_OPTION = "l";
   public static final String LINE_OPTION = "l";
   public static final String LINE_WIDTH_OPTION = "w";
+  public static final String LIMIT_OPTION = "l";
+  public static final String MAX_RESULTS_OPTION = "m";
   public static final String METHOD_OPTION = "m";
   public static final String NAME_OPTION = "n";
   public static final String NATURE_OPTION = "n";
@@ -78,18 +86,22 @@ public class Options
   public static final String PATH_OPTION = "p";
   public static final String PATTERN_OPTION = "p";
   public static final String PEEK_OPTION = "p";
+  public static final String PREFIX_OPTION = "x";
   public static final String PROJECT_OPTION = "p";
   public static final String PROPERTIES_OPTION = "r";
+  public static final String RECURSIVE_OPTION = "r";
   public static final String REVISION_OPTION = "r";
   public static final String SCHEMA_OPTION = "s";
   public static final String SCOPE_OPTION = "s";
   public static final String SEARCH_OPTION = "s";
   public static final String SETTINGS_OPTION = "s";
   public static final String SETTING_OPTION = "s";
+  public static final String SINCE_OPTION = "s";
   public static final String SOURCE_OPTION = "s";
   public static final String SUPERTYPE_OPTION = "s";
   public static final String TEMPLATE_OPTION = "t";
   public static final String TEST_OPTION = "t";
+  public static final String TIMEOUT_OPTION = "t";
   public static final String TYPE_OPTION = "t";
   public static final String URL_OPTION = "u";
   public static final String VALIDATE_OPTION = "v";
@@ -16,10 +16,14 @@
  */
 package org.eclim.util.file;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.commons.vfs.FileObject;
 import org.apache.commons.vfs.FileSystemManager;
@@ -37,8 +41,22 @@ import org.eclim.util.IOUtils;
  */
 public class FileOffsets
 {
+  private static final int CACHE_SIZE = 200;
+
+  private static Map<String,FileOffsets> cache = Collections.synchronizedMap(
+      new LinkedHashMap<String,FileOffsets>(16, .75f, true){
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry<String,FileOffsets> e)
+        {
+          return size() > CACHE_SIZE;
+        }
+      });
+
   private Integer[] offsets;
   private String[] multiByteLines;
+  private long lastModified;
+  private long length;
 
   private FileOffsets ()
   {
@@ -70,6 +88,32 @@ public class FileOffsets
     }
   }
 
+  /**
+   * Gets the offsets for the supplied local file, re-using the offsets
+   * compiled by a previous call if the file has not been modified since.
+   *
+   * @param filename The absolute path of the file.
+   * @return The FileOffsets instance.
+   */
+  public static FileOffsets compileCached(String filename)
+  {
+    File file = new File(filename);
+    long lastModified = file.lastModified();
+    long length = file.length();
+
+    FileOffsets offsets = cache.get(filename);
+    if (offsets == null ||
+        offsets.lastModified != lastModified ||
+        offsets.length != length)
+    {
+      offsets = compile(filename);
+      offsets.lastModified = lastModified;
+      offsets.length = length;
+      cache.put(filename, offsets);
+    }
+    return offsets;
+  }
+
   /**
    * Reads the supplied input stream and compiles a list of offsets.
    *